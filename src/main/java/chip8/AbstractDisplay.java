@@ -0,0 +1,348 @@
+package chip8;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Base class of the chip-8's displays. Holds the 64 x 32 screen and implements the drawing logic,
+ * so every display backend (Swing window, headless) draws sprites exactly the same way.
+ * The screen itself belongs to the emulation thread. Other threads read the frames published
+ * at the frame boundaries (publishFrame), through a sequence lock - a reader copies the frame and retries
+ * if the emulation thread published a new one meanwhile, so the emulation thread never waits for a reader.
+ */
+public abstract class AbstractDisplay implements Display {
+
+    /**
+     * 64 x 32 screen, one long per row. The most significant bit is the leftmost pixel (x = 0),
+     * so a sprite's byte is drawn with a single rotation and XOR.
+     */
+    protected long[] screen;
+
+    /**
+     * Last published frame. Its elements are volatile, so a reader never sees a half-written row.
+     */
+    private AtomicLongArray publishedRows;
+
+    /**
+     * Sequence lock of the published frame, incremented before and after publishing a frame.
+     * Odd while the emulation thread writes a new frame, even otherwise, half of it is the frame's number.
+     */
+    private volatile long publishSequence;
+
+    /**
+     * Frame last handed to the renderer - the published frame read by the last call of updateDirtyRegion.
+     * Renderers paint this frame, so the painted pixels always match the dirty region.
+     * Used only by the rendering thread.
+     */
+    protected long[] presentedRows;
+
+    /**
+     * Number of the frame in presentedRows.
+     */
+    private volatile long presentedFrame;
+
+    /**
+     * Published frame read by updateDirtyRegion, reused for every read.
+     */
+    private long[] frameRows;
+
+    /**
+     * Rows that changed between the last two presented frames, bit y is set when row y changed.
+     */
+    private int dirtyRows;
+
+    /**
+     * Columns that changed between the last two presented frames, the most significant bit is x = 0.
+     */
+    private long dirtyColumns;
+
+    /**
+     * Reference to the memory.
+     */
+    protected Memory memory;
+
+    /**
+     * Whether sprites should overlap on the screen, when they reach the border.
+     * Some chip-8 programs are written to overlap sprites only, if the whole sprite is beyond the screen.
+     * References aren't certain, whether this should be a standard. Most programs use overlapping mode by default.
+     */
+    protected boolean overlappingMode;
+
+    /**
+     * Warning boolean that is set when a pixel was drawn outside of the screen bounds,
+     * and screen overlapping is turned off. This may be a desired effect (for ex. BLITZ game), or a bug.
+     */
+    private boolean warningSet = false;
+
+    /**
+     * Main constructor. Creates an empty screen.
+     * @param memory Reference to chip's memory.
+     * @param overlappingMode Whether to use overlapping mode.
+     */
+    protected AbstractDisplay(Memory memory, boolean overlappingMode) {
+        screen = new long[HEIGHT];
+        publishedRows = new AtomicLongArray(HEIGHT);
+        presentedRows = new long[HEIGHT];
+        frameRows = new long[HEIGHT];
+
+        this.overlappingMode = overlappingMode;
+
+        this.memory = memory;
+    }
+
+    /**
+     * Sets a single pixel on the screen.
+     * @param x The X position on the screen.
+     * @param y The Y position on the screen.
+     * @param value True to turn pixel on, otherwise false.
+     * @param sprite True if drawing a sprite.
+     * @return True if collision occurs, otherwise false.
+     */
+    public boolean setPixel(int x, int y, boolean value, boolean sprite) {
+
+        if (!overlappingMode) {
+            if (x < 0 || x > 63 || y < 0 || y > 31) {
+                warnOutOfBounds();
+                return false;
+            }
+        }
+
+        //rotation and the mask wrap the coordinates, negative ones too
+        long bit = Long.rotateRight(1L << 63, x);
+        int row = y & (HEIGHT - 1);
+
+        //drawing sprites or normal pixels
+        //when drawing sprites, pixels are XORed on the screen
+        //when not drawing a sprite, pixels are just set to the value
+        if (sprite) {
+            if (!value) {
+                return false;
+            }
+            //returns true if pixel was erased - a collision occurred, otherwise false.
+            boolean collision = (screen[row] & bit) != 0;
+            screen[row] ^= bit;
+            return collision;
+        } else {
+            if (value) {
+                screen[row] |= bit;
+            } else {
+                screen[row] &= ~bit;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Gets a single pixel from the screen.
+     * @param x The x position of the pixel on the screen.
+     * @param y The y position of the pixel on the screen.
+     * @return True if set, otherwise false.
+     */
+    public boolean getPixel(int x, int y) {
+        return (screen[y] << x) < 0;
+    }
+
+    /**
+     * Gets a byte representing 8 pixels from the screen, beginning from the x and y position.
+     * If x or y is bigger than the screen size, it overlaps to the other side of the screen (returns to the beginning).
+     * @param x The x position of the most significant bit.
+     * @param y The y position of the most significant bit.
+     * @return Byte representing 8 pixels from the screen.
+     */
+    public byte getByte(int x, int y) {
+        return (byte) (Long.rotateLeft(screen[y & (HEIGHT - 1)], x) >>> 56);
+    }
+
+    /**
+     * Draws a sprite on the screen at x and y position, from the memory adress.
+     * Each of the sprite's bytes is drawn with a single XOR on the screen's row, collision is a single AND.
+     * @param x The x position on the screen.
+     * @param y The y position on the screen.
+     * @param address Adress of the sprite's beginning in the memory.
+     * @param numberOfBytes Number of bytes from the memory to draw, beginning from the address.
+     * @return True if collision occurred, otherwise false.
+     */
+    public boolean drawSprite(int x, int y, int address, int numberOfBytes) {
+        boolean collision = false;
+
+        //sprite clipped on the right or the left border
+        if (!overlappingMode && numberOfBytes > 0 && (x < 0 || x > 56)) {
+            warnOutOfBounds();
+        }
+
+        for (int i = 0; i < numberOfBytes; i++) {
+            //get the byte from the memory and move it to the most significant bits of the row
+            long line = (long) (memory.get((short) (address + i)) & 0xFF) << 56;
+            int row = y + i;
+
+            if (overlappingMode) {
+                line = Long.rotateRight(line, x);
+                row &= HEIGHT - 1;
+            } else {
+                if (row < 0 || row >= HEIGHT) {
+                    warnOutOfBounds();
+                    continue;
+                }
+                //pixels beyond the borders are shifted out of the row
+                if (x >= 0) {
+                    line = x < 64 ? line >>> x : 0;
+                } else {
+                    line = x > -8 ? line << -x : 0;
+                }
+            }
+
+            collision |= (screen[row] & line) != 0;
+            screen[row] ^= line;
+        }
+        return collision;
+    }
+
+    /**
+     * Clears the whole screen.
+     */
+    public void clear() {
+        Arrays.fill(screen, 0L);
+    }
+
+    /**
+     * Gets a single row of the screen.
+     * @param y The y position of the row.
+     * @return Row's pixels, the most significant bit is the leftmost pixel.
+     */
+    public long getRow(int y) {
+        return screen[y];
+    }
+
+    /**
+     * Copies all the rows of the screen to the given array, without allocating.
+     * Only for the emulation thread, other threads should use readFrame.
+     * @param rows Array of at least HEIGHT longs, the most significant bit of each is the leftmost pixel.
+     */
+    public void copyRows(long[] rows) {
+        System.arraycopy(screen, 0, rows, 0, HEIGHT);
+    }
+
+    /**
+     * @return Rows that changed between the last two rendered frames, bit y is set when row y changed.
+     */
+    public int getDirtyRows() {
+        return dirtyRows;
+    }
+
+    /**
+     * @return Columns that changed between the last two rendered frames, the most significant bit is x = 0.
+     */
+    public long getDirtyColumns() {
+        return dirtyColumns;
+    }
+
+    /**
+     * Publishes the current screen as a new frame for the other threads (renderers, recorders).
+     * Called by the emulation thread at the frame boundaries. Never blocks and doesn't allocate.
+     * @return True if a new frame was published, false if the screen didn't change since the last one.
+     */
+    public boolean publishFrame() {
+        boolean changed = false;
+        for (int y = 0; y < HEIGHT && !changed; y++) {
+            changed = publishedRows.get(y) != screen[y];
+        }
+        if (!changed) {
+            return false;
+        }
+
+        long sequence = publishSequence;
+        publishSequence = sequence + 1;
+        for (int y = 0; y < HEIGHT; y++) {
+            publishedRows.set(y, screen[y]);
+        }
+        publishSequence = sequence + 2;
+        return true;
+    }
+
+    /**
+     * Copies the last published frame to the given array. The copy is always consistent - a whole frame,
+     * even if the emulation thread publishes a new one meanwhile. Doesn't allocate.
+     * @param rows Array of at least HEIGHT longs, the most significant bit of each is the leftmost pixel.
+     * @return Number of the copied frame.
+     */
+    public long readFrame(long[] rows) {
+        while (true) {
+            long sequence = publishSequence;
+            //the emulation thread writes only 32 longs, the frame is ready almost immediately
+            if ((sequence & 1) == 0) {
+                for (int y = 0; y < HEIGHT; y++) {
+                    rows[y] = publishedRows.get(y);
+                }
+                if (publishSequence == sequence) {
+                    return sequence >>> 1;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * @return Number of the last published frame, incremented only when the screen changed.
+     */
+    public long getFrameNumber() {
+        return publishSequence >>> 1;
+    }
+
+    /**
+     * @return Number of the frame last presented by the renderer (updateDirtyRegion).
+     */
+    protected long getPresentedFrame() {
+        return presentedFrame;
+    }
+
+    /**
+     * Reads the last published frame, compares it with the last presented one, finds the changed rows and columns
+     * and presents the new frame. Called by the renderers once per frame, always from the same thread.
+     * Comparing frames instead of flagging the writes also finds sprites that were drawn and erased again.
+     * @return True if anything changed since the last presented frame.
+     */
+    protected boolean updateDirtyRegion() {
+        long frame = readFrame(frameRows);
+
+        int rows = 0;
+        long columns = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            long row = frameRows[y];
+            long changed = row ^ presentedRows[y];
+            if (changed != 0) {
+                rows |= 1 << y;
+                columns |= changed;
+                presentedRows[y] = row;
+            }
+        }
+
+        dirtyRows = rows;
+        dirtyColumns = columns;
+        presentedFrame = frame;
+        return rows != 0;
+    }
+
+    /**
+     * @return A 2D boolean array representing current screen.
+     * Allocates a new array, readFrame is preferred for reading the screen from other threads.
+     */
+    public boolean[][] getScreen() {
+        boolean[][] screenCopy = new boolean[WIDTH][HEIGHT];
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                screenCopy[x][y] = getPixel(x, y);
+            }
+        }
+        return screenCopy;
+    }
+
+    /**
+     * Prints the warning about a pixel drawn outside of the screen, only once.
+     */
+    private void warnOutOfBounds() {
+        if (!warningSet) {
+            System.out.println("Warning! Screen coordinate out out bounds, overlapping turned off.");
+            warningSet = true;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package chip8;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Audio sink rendering the sound timer's output in emulated time, without any audio device.
+ * Every emulated frame (timer tick) adds SAMPLES_PER_FRAME samples - the tone while the sound timer is active,
+ * silence otherwise - so the captured audio doesn't depend on the host's speed and a run in turbo or headless mode
+ * produces the same samples as a run in real time. The samples can be read from memory or written as a WAV file.
+ */
+public class AudioCapture {
+
+    /**
+     * Number of samples rendered per emulated frame (1/60 of a second).
+     */
+    public static final int SAMPLES_PER_FRAME = ToneGenerator.SAMPLE_RATE / FrameScheduler.FRAME_RATE;
+
+    /**
+     * Generator of the tone's samples, the same as the sound system's.
+     */
+    private ToneGenerator generator = new ToneGenerator();
+
+    /**
+     * Captured samples, 8-bit signed mono. Only the first sampleCount are valid.
+     */
+    private byte[] samples = new byte[SAMPLES_PER_FRAME * FrameScheduler.FRAME_RATE];
+
+    /**
+     * Number of the captured samples.
+     */
+    private int sampleCount;
+
+    /**
+     * Renders a single emulated frame.
+     * @param toneOn Whether the tone plays during the frame (the sound timer is active).
+     */
+    public synchronized void renderFrame(boolean toneOn) {
+        if (sampleCount + SAMPLES_PER_FRAME > samples.length) {
+            samples = Arrays.copyOf(samples, samples.length * 2);
+        }
+        generator.generate(samples, sampleCount, SAMPLES_PER_FRAME, toneOn);
+        sampleCount += SAMPLES_PER_FRAME;
+    }
+
+    /**
+     * @return Number of the captured samples.
+     */
+    public synchronized int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return Copy of the captured samples, 8-bit signed mono at ToneGenerator.SAMPLE_RATE.
+     */
+    public synchronized byte[] getSamples() {
+        return Arrays.copyOf(samples, sampleCount);
+    }
+
+    /**
+     * Writes the captured samples as a WAV file.
+     * @param path Path to the file.
+     * @throws IOException If the file can't be written.
+     */
+    public void writeWav(String path) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(path))) {
+            writeWav(out);
+        }
+    }
+
+    /**
+     * Writes the captured samples in the WAV format (PCM, 8-bit mono).
+     * @param stream Stream to write to, not closed.
+     * @throws IOException If the stream can't be written.
+     */
+    public synchronized void writeWav(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+
+        //RIFF header, all the numbers are little-endian
+        out.writeBytes("RIFF");
+        out.writeInt(Integer.reverseBytes(36 + sampleCount));
+        out.writeBytes("WAVE");
+
+        //format chunk - PCM, 1 channel, 1 byte per sample
+        out.writeBytes("fmt ");
+        out.writeInt(Integer.reverseBytes(16));
+        out.writeShort(Short.reverseBytes((short) 1));
+        out.writeShort(Short.reverseBytes((short) 1));
+        out.writeInt(Integer.reverseBytes(ToneGenerator.SAMPLE_RATE));
+        out.writeInt(Integer.reverseBytes(ToneGenerator.SAMPLE_RATE));
+        out.writeShort(Short.reverseBytes((short) 1));
+        out.writeShort(Short.reverseBytes((short) 8));
+
+        //8-bit WAV samples are unsigned
+        out.writeBytes("data");
+        out.writeInt(Integer.reverseBytes(sampleCount));
+        for (int i = 0; i < sampleCount; i++) {
+            out.write(samples[i] + 128);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,97 @@
+package chip8;
+
+/**
+ * A basic block of chip-8's instructions found by the ControlFlowGraph - a straight-line run of instructions
+ * entered only at its first instruction and left only after its last one.
+ */
+public class BasicBlock {
+
+    /**
+     * Address of the first instruction.
+     */
+    private final int start;
+
+    /**
+     * Address after the last instruction.
+     */
+    private final int end;
+
+    /**
+     * Addresses the execution may continue at after the block (not including the called subroutine).
+     */
+    private final int[] successors;
+
+    /**
+     * Address of the subroutine called by the block's last instruction (2nnn), -1 if it doesn't end with a call.
+     */
+    private final int callTarget;
+
+    /**
+     * Whether the block ends with an indirect jump (Bnnn), so its successor isn't known before running it.
+     */
+    private final boolean indirect;
+
+    /**
+     * Main constructor.
+     * @param start Address of the first instruction.
+     * @param end Address after the last instruction.
+     * @param successors Addresses the execution may continue at after the block.
+     * @param callTarget Address of the called subroutine, -1 if none.
+     * @param indirect Whether the block ends with an indirect jump.
+     */
+    public BasicBlock(int start, int end, int[] successors, int callTarget, boolean indirect) {
+        this.start = start;
+        this.end = end;
+        this.successors = successors;
+        this.callTarget = callTarget;
+        this.indirect = indirect;
+    }
+
+    /**
+     * @return Address of the first instruction.
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @return Address after the last instruction.
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * @return Number of the instructions in the block.
+     */
+    public int getLength() {
+        return (end - start) / 2;
+    }
+
+    /**
+     * @return Addresses the execution may continue at after the block, empty after a return or an indirect jump.
+     * The array is shared, it mustn't be modified.
+     */
+    public int[] getSuccessors() {
+        return successors;
+    }
+
+    /**
+     * @return Address of the subroutine called by the block's last instruction, -1 if it doesn't end with a call.
+     */
+    public int getCallTarget() {
+        return callTarget;
+    }
+
+    /**
+     * @return True if the block ends with an indirect jump (Bnnn).
+     */
+    public boolean isIndirect() {
+        return indirect;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%03X-%03X", start, end);
+    }
+}
@@ -0,0 +1,530 @@
+package chip8;
+
+import static chip8.ClassFileWriter.*;
+
+/**
+ * Class translating basic blocks of chip-8's instructions into JVM classes implementing CompiledBlock.
+ * A block is a straight-line run of instructions, ending at a jump, call, return or skip instruction,
+ * before an instruction that isn't translated (Fx0A waits for a key, Fx33 and Fx55 write to the memory),
+ * at the end of a memory page (so the block can be validated with the page's write generation)
+ * or after MAX_LENGTH instructions.
+ * Register instructions are translated into plain bytecode working on the registry's arrays and fields,
+ * the more complex ones (drawing, random numbers, loading registers, calls) call the CPU's instruction methods,
+ * so the results are exactly the same as the interpreter's.
+ */
+public class BlockCompiler {
+
+    /**
+     * Maximum number of instructions in a single block - a whole memory page.
+     */
+    public static final int MAX_LENGTH = Memory.PAGE_SIZE / 2;
+
+    //internal names and descriptors of the classes used by the generated code
+    private static final String CPU_CLASS = "chip8/CPU";
+    private static final String REGISTRY_CLASS = "chip8/Registry";
+    private static final String BLOCK_INTERFACE = "chip8/CompiledBlock";
+    private static final String EXECUTE_DESCRIPTOR = "(Lchip8/CPU;Lchip8/Registry;)I";
+
+    //local variables of the generated method: 0 - this, 1 - CPU, 2 - registry, 3 - VReg array, 4 and 5 - temporary
+    private static final int LOCAL_VX = 4;
+    private static final int LOCAL_VY = 5;
+    private static final int MAX_LOCALS = 6;
+    private static final int MAX_STACK = 8;
+
+    /**
+     * Reference to the decode cache the instructions are read from.
+     */
+    private DecodeCache decodeCache;
+
+    /**
+     * Whether the shift quirk concerning 8xyE and 8xy7 instructions should be used.
+     */
+    private boolean shiftQuirk;
+
+    /**
+     * Number of the generated classes, used to give each class a unique name.
+     */
+    private int classCount;
+
+    /**
+     * Main constructor.
+     * @param decodeCache Reference to the decode cache the instructions are read from.
+     * @param shiftQuirk Whether to use shiftQuirk.
+     */
+    public BlockCompiler(DecodeCache decodeCache, boolean shiftQuirk) {
+        this.decodeCache = decodeCache;
+        this.shiftQuirk = shiftQuirk;
+    }
+
+    /**
+     * Checks whether an instruction can be a part of a compiled block.
+     * Fx0A (waiting for a key) and the instructions writing to the memory (Fx33, Fx55) are always interpreted,
+     * so a block never modifies its own code.
+     * @param op Micro-op of the instruction.
+     * @return True if the instruction can be compiled.
+     */
+    public static boolean isCompilable(int op) {
+        switch (Decoder.number(op)) {
+            case Decoder.LD_VX_K:
+            case Decoder.LD_B_VX:
+            case Decoder.LD_I_VX:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Checks whether an instruction ends a block - whether it may change the PC in other way than incrementing it.
+     * @param op Micro-op of the instruction.
+     * @return True if the instruction ends a block.
+     */
+    public static boolean isTerminator(int op) {
+        switch (Decoder.number(op)) {
+            case Decoder.RET:
+            case Decoder.JP:
+            case Decoder.CALL:
+            case Decoder.SE_VX_KK:
+            case Decoder.SNE_VX_KK:
+            case Decoder.SE_VX_VY:
+            case Decoder.SNE_VX_VY:
+            case Decoder.JP_V0:
+            case Decoder.SKP:
+            case Decoder.SKNP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Finds the length of the block beginning at the address.
+     * @param start Address of the block's first instruction.
+     * @return Number of the instructions in the block, 0 if the first instruction can't be compiled.
+     */
+    public int blockLength(int start) {
+        int length = 0;
+        int address = start;
+        int page = start >> Memory.PAGE_SHIFT;
+
+        //the whole instruction has to fit in the block's page
+        while (length < MAX_LENGTH && address >= 0 && address < 0xFFF && (address + 1) >> Memory.PAGE_SHIFT == page) {
+            int op = decodeCache.get(address);
+            if (!isCompilable(op)) {
+                break;
+            }
+
+            length++;
+            address += 2;
+
+            if (isTerminator(op)) {
+                break;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Translates a block into a new class and creates its instance.
+     * @param start Address of the block's first instruction.
+     * @param length Number of the instructions in the block, as returned by blockLength.
+     * @return Compiled block.
+     */
+    public CompiledBlock compile(int start, int length) {
+        String className = String.format("chip8/gen/Block%03X_%d", start, classCount++);
+        ClassFileWriter writer = new ClassFileWriter(className);
+
+        //VReg array is held in a local variable
+        writer.emit(ALOAD_2);
+        writer.emitField(GETFIELD, REGISTRY_CLASS, "VReg", "[B");
+        writer.emit(ASTORE_3);
+
+        int address = start;
+        boolean pcSet = false;
+        for (int i = 0; i < length; i++) {
+            int op = decodeCache.get(address);
+            address += 2;
+            pcSet = emitInstruction(writer, op, address);
+        }
+
+        //block that didn't end with a jump continues with the next instruction
+        if (!pcSet) {
+            setPC(writer, address);
+        }
+
+        writer.pushInt(length);
+        writer.emit(IRETURN);
+
+        byte[] bytes = writer.toByteArray(BLOCK_INTERFACE, "execute", EXECUTE_DESCRIPTOR, MAX_STACK, MAX_LOCALS);
+
+        try {
+            //every block gets its own class loader, so the class can be unloaded when the block is invalidated
+            Class<?> blockClass = new BlockClassLoader().define(className.replace('/', '.'), bytes);
+            return (CompiledBlock) blockClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not load the compiled block at " + Integer.toHexString(start), e);
+        }
+    }
+
+    /**
+     * Emits the bytecode of a single instruction.
+     * @param w Class writer.
+     * @param op Micro-op of the instruction.
+     * @param next Address of the next instruction.
+     * @return True if the emitted code sets the PC.
+     */
+    private boolean emitInstruction(ClassFileWriter w, int op, int next) {
+        int x = (op >> 8) & 0xF;
+        int y = (op >> 4) & 0xF;
+        int kk = (byte) op;
+        int nnn = op & 0xFFF;
+
+        switch (Decoder.number(op)) {
+            case Decoder.CLS:
+                w.emit(ALOAD_1);
+                w.emitInvoke(INVOKEVIRTUAL, CPU_CLASS, "clearScreen", "()V");
+                return false;
+
+            case Decoder.RET:
+                //PC doesn't matter, it's overwritten with the top of the stack
+                w.emit(ALOAD_1);
+                w.emitInvoke(INVOKEVIRTUAL, CPU_CLASS, "returnSubroutine", "()V");
+                return true;
+
+            case Decoder.JP:
+                setPC(w, nnn);
+                return true;
+
+            case Decoder.CALL:
+                //return address is the PC pushed on the stack
+                setPC(w, next);
+                w.emit(ALOAD_1);
+                w.pushInt((short) nnn);
+                w.emitInvoke(INVOKEVIRTUAL, CPU_CLASS, "callSubroutine", "(S)V");
+                return true;
+
+            case Decoder.SE_VX_KK:
+                emitSkip(w, x, -1, kk, IF_ICMPNE, next);
+                return true;
+
+            case Decoder.SNE_VX_KK:
+                emitSkip(w, x, -1, kk, IF_ICMPEQ, next);
+                return true;
+
+            case Decoder.SE_VX_VY:
+                emitSkip(w, x, y, 0, IF_ICMPNE, next);
+                return true;
+
+            case Decoder.SNE_VX_VY:
+                emitSkip(w, x, y, 0, IF_ICMPEQ, next);
+                return true;
+
+            case Decoder.LD_VX_KK:
+                //V[x] = kk
+                w.emit(ALOAD_3);
+                w.pushInt(x);
+                w.pushInt(kk);
+                w.emit(BASTORE);
+                return false;
+
+            case Decoder.ADD_VX_KK:
+                //V[x] = V[x] + kk
+                w.emit(ALOAD_3);
+                w.pushInt(x);
+                loadV(w, x);
+                w.pushInt(kk);
+                w.emit(IADD);
+                w.emit(BASTORE);
+                return false;
+
+            case Decoder.LD_VX_VY:
+                //V[x] = V[y]
+                w.emit(ALOAD_3);
+                w.pushInt(x);
+                loadV(w, y);
+                w.emit(BASTORE);
+                return false;
+
+            case Decoder.OR:
+                emitLogic(w, x, y, IOR);
+                return false;
+
+            case Decoder.AND:
+                emitLogic(w, x, y, IAND);
+                return false;
+
+            case Decoder.XOR:
+                emitLogic(w, x, y, IXOR);
+                return false;
+
+            case Decoder.ADD_VX_VY:
+                //result = (V[x] & 0xFF) + (V[y] & 0xFF)
+                loadUnsignedV(w, x);
+                loadUnsignedV(w, y);
+                w.emit(IADD);
+                w.emit(ISTORE);
+                w.emit(LOCAL_VX);
+                //VF = result >> 8 (carry), then V[x] = result
+                w.emit(ALOAD_3);
+                w.pushInt(0xF);
+                w.emit(ILOAD);
+                w.emit(LOCAL_VX);
+                w.pushInt(8);
+                w.emit(ISHR);
+                w.emit(BASTORE);
+                w.emit(ALOAD_3);
+                w.pushInt(x);
+                w.emit(ILOAD);
+                w.emit(LOCAL_VX);
+                w.emit(BASTORE);
+                return false;
+
+            case Decoder.SUB:
+                emitSub(w, x, y, LOCAL_VX, LOCAL_VY);
+                return false;
+
+            case Decoder.SUBN:
+                emitSub(w, x, y, LOCAL_VY, LOCAL_VX);
+                return false;
+
+            case Decoder.SHR:
+                emitShift(w, x, shiftQuirk ? x : y, false);
+                return false;
+
+            case Decoder.SHL:
+                emitShift(w, x, shiftQuirk ? x : y, true);
+                return false;
+
+            case Decoder.LD_I:
+                //I = nnn
+                w.emit(ALOAD_2);
+                w.pushInt(nnn);
+                w.emitField(PUTFIELD, REGISTRY_CLASS, "IReg", "S");
+                return false;
+
+            case Decoder.JP_V0:
+                w.emit(ALOAD_1);
+                w.pushInt((short) nnn);
+                w.emitInvoke(INVOKEVIRTUAL, CPU_CLASS, "jumpAddV0", "(S)V");
+                return true;
+
+            case Decoder.RND:
+                w.emit(ALOAD_1);
+                w.pushInt(x);
+                w.pushInt(kk);
+                w.emitInvoke(INVOKEVIRTUAL, CPU_CLASS, "rand", "(BB)V");
+                return false;
+
+            case Decoder.DRW:
+                w.emit(ALOAD_1);
+                w.pushInt(x);
+                w.pushInt(y);
+                w.pushInt(op & 0xF);
+                w.emitInvoke(INVOKEVIRTUAL, CPU_CLASS, "draw", "(BBB)V");
+                return false;
+
+            case Decoder.SKP:
+                //skipping increments the PC, so it has to point to the next instruction first
+                setPC(w, next);
+                w.emit(ALOAD_1);
+                w.pushInt(x);
+                w.emitInvoke(INVOKEVIRTUAL, CPU_CLASS, "skipKeyPressed", "(B)V");
+                return true;
+
+            case Decoder.SKNP:
+                setPC(w, next);
+                w.emit(ALOAD_1);
+                w.pushInt(x);
+                w.emitInvoke(INVOKEVIRTUAL, CPU_CLASS, "skipKeyNotPressed", "(B)V");
+                return true;
+
+            case Decoder.LD_VX_DT:
+                //V[x] = DT
+                w.emit(ALOAD_3);
+                w.pushInt(x);
+                w.emit(ALOAD_2);
+                w.emitField(GETFIELD, REGISTRY_CLASS, "DT", "B");
+                w.emit(BASTORE);
+                return false;
+
+            case Decoder.LD_DT_VX:
+                //DT = V[x]
+                w.emit(ALOAD_2);
+                loadV(w, x);
+                w.emitField(PUTFIELD, REGISTRY_CLASS, "DT", "B");
+                return false;
+
+            case Decoder.LD_ST_VX:
+                //ST = V[x]
+                w.emit(ALOAD_2);
+                loadV(w, x);
+                w.emitField(PUTFIELD, REGISTRY_CLASS, "ST", "B");
+                return false;
+
+            case Decoder.ADD_I_VX:
+                //I = I + (V[x] & 0xFF)
+                w.emit(ALOAD_2);
+                w.emit(ALOAD_2);
+                w.emitField(GETFIELD, REGISTRY_CLASS, "IReg", "S");
+                loadUnsignedV(w, x);
+                w.emit(IADD);
+                w.emit(I2S);
+                w.emitField(PUTFIELD, REGISTRY_CLASS, "IReg", "S");
+                return false;
+
+            case Decoder.LD_F_VX:
+                w.emit(ALOAD_1);
+                w.pushInt(x);
+                w.emitInvoke(INVOKEVIRTUAL, CPU_CLASS, "setISpriteAddrReg", "(B)V");
+                return false;
+
+            case Decoder.LD_VX_I:
+                w.emit(ALOAD_1);
+                w.pushInt(x);
+                w.emitInvoke(INVOKEVIRTUAL, CPU_CLASS, "loadRegsAtI", "(B)V");
+                return false;
+
+            default:
+                //0nnn - SYS addr and unknown instructions do nothing
+                return false;
+        }
+    }
+
+    /**
+     * Emits PC = address.
+     */
+    private void setPC(ClassFileWriter w, int address) {
+        w.emit(ALOAD_2);
+        w.pushInt((short) address);
+        w.emitField(PUTFIELD, REGISTRY_CLASS, "PC", "S");
+    }
+
+    /**
+     * Pushes V[reg] on the stack (sign extended, the same way the interpreter compares the registers).
+     */
+    private void loadV(ClassFileWriter w, int reg) {
+        w.emit(ALOAD_3);
+        w.pushInt(reg);
+        w.emit(BALOAD);
+    }
+
+    /**
+     * Pushes V[reg] & 0xFF on the stack.
+     */
+    private void loadUnsignedV(ClassFileWriter w, int reg) {
+        loadV(w, reg);
+        w.pushInt(0xFF);
+        w.emit(IAND);
+    }
+
+    /**
+     * Emits a skip instruction: PC = next + 2 if the condition is met, otherwise PC = next.
+     * @param y Second register to compare or -1 to compare with the value.
+     * @param value Value to compare with, if y is -1.
+     * @param notSkippedBranch Branch taken when the instruction isn't skipped.
+     */
+    private void emitSkip(ClassFileWriter w, int x, int y, int value, int notSkippedBranch, int next) {
+        w.emit(ALOAD_2);
+        loadV(w, x);
+        if (y < 0) {
+            w.pushInt(value);
+        } else {
+            loadV(w, y);
+        }
+        int notSkipped = w.emitBranch(notSkippedBranch);
+        w.pushInt((short) (next + 2));
+        int end = w.emitBranch(GOTO);
+        w.patchBranch(notSkipped);
+        w.pushInt((short) next);
+        w.patchBranch(end);
+        w.emitField(PUTFIELD, REGISTRY_CLASS, "PC", "S");
+    }
+
+    /**
+     * Emits V[x] = V[x] (operation) V[y].
+     */
+    private void emitLogic(ClassFileWriter w, int x, int y, int operation) {
+        w.emit(ALOAD_3);
+        w.pushInt(x);
+        loadV(w, x);
+        loadV(w, y);
+        w.emit(operation);
+        w.emit(BASTORE);
+    }
+
+    /**
+     * Emits 8xy5 (SUB) or 8xy7 (SUBN). With the minuend and subtrahend held in the given locals:
+     * VF = 1 if minuend > subtrahend, otherwise 0, then V[x] = minuend - subtrahend.
+     */
+    private void emitSub(ClassFileWriter w, int x, int y, int minuend, int subtrahend) {
+        loadUnsignedV(w, x);
+        w.emit(ISTORE);
+        w.emit(LOCAL_VX);
+        loadUnsignedV(w, y);
+        w.emit(ISTORE);
+        w.emit(LOCAL_VY);
+
+        //both values are from 0 to 255, so (subtrahend - minuend) is negative only if minuend > subtrahend
+        w.emit(ALOAD_3);
+        w.pushInt(0xF);
+        w.emit(ILOAD);
+        w.emit(subtrahend);
+        w.emit(ILOAD);
+        w.emit(minuend);
+        w.emit(ISUB);
+        w.pushInt(31);
+        w.emit(IUSHR);
+        w.emit(BASTORE);
+
+        w.emit(ALOAD_3);
+        w.pushInt(x);
+        w.emit(ILOAD);
+        w.emit(minuend);
+        w.emit(ILOAD);
+        w.emit(subtrahend);
+        w.emit(ISUB);
+        w.emit(BASTORE);
+    }
+
+    /**
+     * Emits 8xy6 (SHR) or 8xyE (SHL). VF is set first and the shifted register is read again afterwards,
+     * exactly like in the interpreter (it matters when the shifted register is VF).
+     */
+    private void emitShift(ClassFileWriter w, int x, int source, boolean left) {
+        w.emit(ALOAD_3);
+        w.pushInt(0xF);
+        loadV(w, source);
+        if (left) {
+            w.pushInt(0x80);
+            w.emit(IAND);
+            w.pushInt(7);
+            w.emit(ISHR);
+        } else {
+            w.emit(ICONST_1);
+            w.emit(IAND);
+        }
+        w.emit(BASTORE);
+
+        w.emit(ALOAD_3);
+        w.pushInt(x);
+        loadUnsignedV(w, source);
+        w.emit(ICONST_1);
+        w.emit(left ? ISHL : IUSHR);
+        w.emit(BASTORE);
+    }
+
+    /**
+     * Class loader defining a single compiled block's class.
+     */
+    private static class BlockClassLoader extends ClassLoader {
+
+        BlockClassLoader() {
+            super(BlockCompiler.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package chip8;
+
+/**
+ * Reason the debugger paused the machine.
+ */
+public enum BreakReason {
+
+    /**
+     * Pause requested by the user (or the API).
+     */
+    PAUSE,
+
+    /**
+     * A single instruction was stepped over.
+     */
+    STEP,
+
+    /**
+     * The PC reached a breakpoint.
+     */
+    BREAKPOINT,
+
+    /**
+     * The instruction is about to read a watched memory cell.
+     */
+    WATCH_READ,
+
+    /**
+     * The instruction is about to write a watched memory cell.
+     */
+    WATCH_WRITE,
+
+    /**
+     * A condition on the registers became true.
+     */
+    CONDITION
+}
@@ -1,5 +1,6 @@
 package chip8;
 
+import java.io.IOException;
 import java.util.Random;
 
 /**
@@ -38,6 +39,16 @@ public class CPU {
      */
     private short currentInstr;
 
+    /**
+     * Currently fetched instruction decoded into a micro-op (see Decoder).
+     */
+    private int currentOp;
+
+    /**
+     * Cache of the decoded instructions, so every instruction is decoded only once.
+     */
+    private DecodeCache decodeCache;
+
     /**
      * Whether the load-store quirk concerning Fx55 and Fx65 instructions should be used.
      */
@@ -48,6 +59,42 @@ public class CPU {
      */
     private boolean shiftQuirk;
 
+    /**
+     * Number of cycles elapsed so far - executed instructions and the cycles spent waiting for a key.
+     */
+    private long cycles;
+
+    /**
+     * Whether the machine waits for a key press (Fx0A). The waiting instruction is executed again
+     * with every step, until a key is pressed.
+     */
+    private boolean waitingForKey;
+
+    /**
+     * Debugger checked before each instruction, null if there's none.
+     */
+    private Debugger debugger;
+
+    /**
+     * Writer of the execution trace, null if the execution isn't traced.
+     */
+    private TraceWriter tracer;
+
+    /**
+     * Profiler counting the executed instructions, null if the execution isn't profiled.
+     */
+    private Profiler profiler;
+
+    /**
+     * Profiler building the call tree, null if the calls aren't profiled.
+     */
+    private CallProfiler callProfiler;
+
+    /**
+     * Code coverage of the run, null if the coverage isn't recorded.
+     */
+    private Coverage coverage;
+
     /**
      * Main CPU constructor. Sets PC at program's beginning (memory 0x200), sets SP to -1 (empty).
      * @param memory Reference to the memory.
@@ -68,22 +115,163 @@ public class CPU {
 
         randomGen = new Random();
 
+        decodeCache = new DecodeCache(memory);
+
         //beginning PC at 0x200
         this.registry.PC = (short) 0x200;
         this.registry.SP = -1;
     }
 
+    /**
+     * Executes a single instruction - fetches it, increments the PC and executes it.
+     */
+    public void step() {
+        //a paused machine doesn't execute anything
+        if (debugger != null && debugger.isArmed() && debugger.shouldBreak(registry, decodeCache.get(registry.PC))) {
+            return;
+        }
+
+        short PC = registry.PC;
+
+        fetch();
+
+        incrementPC();
+
+        //counted before a call or a return changes the running subroutine
+        if (callProfiler != null) {
+            callProfiler.instruction();
+        }
+
+        decodeAndExecute();
+
+        if (tracer != null) {
+            trace(PC);
+        }
+        if (coverage != null) {
+            coverage.record(PC, currentOp, registry.PC);
+        }
+
+        cycles++;
+    }
+
+    /**
+     * Records the executed instruction in the trace.
+     * @param PC Address of the instruction.
+     */
+    private void trace(short PC) {
+        try {
+            tracer.record(cycles, PC, currentInstr, registry);
+        } catch (IOException e) {
+            //a broken trace mustn't stop the program
+            e.printStackTrace();
+            tracer = null;
+        }
+    }
+
+    /**
+     * @return Number of cycles elapsed so far - executed instructions and the cycles spent waiting for a key.
+     */
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * @return True if the machine waits for a key press (Fx0A). The rest of the frame can be skipped,
+     * the next step only checks the keyboard again.
+     */
+    public boolean isWaitingForKey() {
+        return waitingForKey;
+    }
+
+    /**
+     * @return True if the debugger paused the machine. The steps don't execute anything until it's resumed.
+     */
+    public boolean isPaused() {
+        return debugger != null && debugger.isPaused();
+    }
+
+    /**
+     * @return True if the debugger has to check every instruction or the execution is traced, profiled or covered,
+     * so the instructions can't be run by the recompiler.
+     */
+    public boolean isInstrumented() {
+        return tracer != null || profiler != null || callProfiler != null || coverage != null
+                || debugger != null && debugger.isArmed();
+    }
+
+    /**
+     * Sets the writer of the execution trace, every executed instruction is recorded.
+     * @param tracer The writer, null to stop tracing.
+     */
+    public void setTracer(TraceWriter tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Sets the profiler counting the executed instructions.
+     * @param profiler The profiler, null to stop profiling.
+     */
+    public void setProfiler(Profiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Sets the profiler building the call tree from the calls and the returns.
+     * @param callProfiler The profiler, null to stop profiling the calls.
+     */
+    public void setCallProfiler(CallProfiler callProfiler) {
+        this.callProfiler = callProfiler;
+    }
+
+    /**
+     * Sets the code coverage recorded after every instruction.
+     * @param coverage The coverage, null to stop recording.
+     */
+    public void setCoverage(Coverage coverage) {
+        this.coverage = coverage;
+    }
+
+    /**
+     * Sets the debugger checked before each instruction.
+     * @param debugger The debugger, null to remove it.
+     */
+    public void setDebugger(Debugger debugger) {
+        this.debugger = debugger;
+    }
+
+    /**
+     * Adds cycles spent outside of step() (e.g. by the compiled blocks, or waiting for a key) to the cycle counter.
+     * @param executed Number of the cycles.
+     */
+    void addCycles(long executed) {
+        cycles += executed;
+    }
+
+    /**
+     * Sets the seed of the random number generator used by Cxkk, so the program's run can be repeated exactly.
+     * @param seed Seed of the random number generator.
+     */
+    public void setRandomSeed(long seed) {
+        randomGen.setSeed(seed);
+    }
+
+    /**
+     * @return Cache of the decoded instructions used by the CPU.
+     */
+    DecodeCache getDecodeCache() {
+        return decodeCache;
+    }
+
     /**
      * Fetches a single instruction (two bytes) from the memory's index stored in PC.
-     * Sets currentInstr using two loaded bytes (currentInstr is a short).
+     * The instruction is taken from the decode cache, so it's read from the memory and decoded only once.
+     * Sets currentOp to the decoded instruction and currentInstr to its raw value.
      */
     public void fetch() {
-        // Two bytes of the instruction
-        byte first = memory.get(registry.PC);
-        byte second = memory.get((short) (registry.PC + 1));
+        currentOp = decodeCache.get(registry.PC);
 
         // A full 2 byte instruction held in short
-        currentInstr = (short) (((first & 0xFF) << 8) | (second & 0xFF));
+        currentInstr = (short) currentOp;
     }
 
     /**
@@ -94,159 +282,189 @@ public class CPU {
     }
 
     /**
-     * Executes the instruction stored in currentInstr.
+     * Executes the instruction stored in currentOp.
+     * Dispatches on the instruction's number, the operands are already in place in the micro-op.
      */
     public void decodeAndExecute() {
-        byte firstNib = (byte) ((currentInstr >> 12) & 0xF);
+        int op = currentOp;
 
-        switch (firstNib) {
-            case 0x00:
-                if ((currentInstr & 0xFFFF) == 0x00E0) {
-                    //00E0 - Clears the screen
-                    clearScreen();
-                } else if ((currentInstr & 0xFFFF) == 0x00EE) {
-                    //00EE - Returns from a subroutine
-                    returnSubroutine();
-                }
+        if (profiler != null) {
+            profiler.count(registry.PC - 2, op >>> 24);
+        }
+
+        switch (op >>> 24) {
+            case Decoder.CLS:
+                //00E0 - Clears the screen
+                clearScreen();
                 break;
 
-            case 0x01:
+            case Decoder.RET:
+                //00EE - Returns from a subroutine
+                returnSubroutine();
+                break;
+
+            case Decoder.JP:
                 //1nnn - Jump to location nnn.
-                jump((short) (currentInstr & 0x0FFF));
+                jump((short) (op & 0x0FFF));
                 break;
 
-            case 0x02:
+            case Decoder.CALL:
                 //2nnn - Call subroutine at nnn.
-                callSubroutine((short) (currentInstr & 0x0FFF));
+                callSubroutine((short) (op & 0x0FFF));
                 break;
 
-            case 0x03:
+            case Decoder.SE_VX_KK:
                 //3xkk - Skip next instruction if Vx = kk
-                skipEqual((byte) ((currentInstr & 0x0F00) >> 8), (byte) (currentInstr & 0x0FF));
+                skipEqual((byte) ((op >> 8) & 0xF), (byte) op);
                 break;
 
-            case 0x04:
+            case Decoder.SNE_VX_KK:
                 //4xkk - Skip next instruction if Vx != kk
-                skipNotEqual((byte) ((currentInstr & 0x0F00) >> 8), (byte) (currentInstr & 0x0FF));
+                skipNotEqual((byte) ((op >> 8) & 0xF), (byte) op);
                 break;
 
-            case 0x05:
+            case Decoder.SE_VX_VY:
                 //5xy0 - Skip next instruction if Vx = Vy
-                skipEqualRegs((byte) ((currentInstr & 0x0F00) >> 8), (byte) ((currentInstr & 0x00F0) >> 4));
+                skipEqualRegs((byte) ((op >> 8) & 0xF), (byte) ((op >> 4) & 0xF));
                 break;
 
-            case 0x06:
+            case Decoder.LD_VX_KK:
                 //6xkk - Set Vx = kk
-                setRegVal((byte) ((currentInstr & 0x0F00) >> 8), (byte) ((currentInstr & 0x0FF)));
+                setRegVal((byte) ((op >> 8) & 0xF), (byte) op);
                 break;
 
-            case 0x07:
+            case Decoder.ADD_VX_KK:
                 //7xkk - Set Vx = Vx + kk
-                addRegVal((byte) ((currentInstr & 0x0F00) >> 8), (byte) ((currentInstr & 0x0FF)));
-                break;
-
-            case 0x08:
-                if ((currentInstr & 0x0F) == 0x00) {
-                    //8xy0 - Set Vx = Vy
-                    setRegReg((byte) ((currentInstr & 0x0F00) >> 8), (byte) ((currentInstr & 0x00F0) >> 4));
-                } else if ((currentInstr & 0x0F) == 0x01) {
-                    //8xy1 - Set Vx = Vx or Vy
-                    orRegReg((byte) ((currentInstr & 0x0F00) >> 8), (byte) ((currentInstr & 0x00F0) >> 4));
-                } else if ((currentInstr & 0x0F) == 0x02) {
-                    //8xy2 - Vx = Vx AND Vy
-                    andRegReg((byte) ((currentInstr & 0x0F00) >> 8), (byte) ((currentInstr & 0x00F0) >> 4));
-                } else if ((currentInstr & 0x0F) == 0x03) {
-                    //8xy3 - Set Vx = Vx XOR Vy
-                    xorRegReg((byte) ((currentInstr & 0x0F00) >> 8), (byte) ((currentInstr & 0x00F0) >> 4));
-                } else if ((currentInstr & 0x0F) == 0x04) {
-                    //8xy4 - Set Vx = Vx + Vy, set VF = carry
-                    addRegReg((byte) ((currentInstr & 0x0F00) >> 8), (byte) ((currentInstr & 0x00F0) >> 4));
-                } else if ((currentInstr & 0x0F) == 0x05) {
-                    //8xy5 - Set Vx = Vx - Vy, set VF = NOT borrow
-                    subRegReg((byte) ((currentInstr & 0x0F00) >> 8), (byte) ((currentInstr & 0x00F0) >> 4));
-                } else if ((currentInstr & 0x0F) == 0x06) {
-                    //8xy6 - Set Vx = Vx SHR 1, store least significant bit in VF
-                    shiftRight((byte) ((currentInstr & 0x0F00) >> 8), (byte) ((currentInstr & 0x00F0) >> 4));
-                } else if ((currentInstr & 0x0F) == 0x07) {
-                    //8xy7 - Set Vx = Vy - Vx, set VF = NOT borrow
-                    subNegativeRegReg((byte) ((currentInstr & 0x0F00) >> 8), (byte) ((currentInstr & 0x00F0) >> 4));
-                } else if ((currentInstr & 0x0F) == 0x0E) {
-                    //8xyE - Set Vx = Vx SHL 1, store most significant bit on VF
-                    shiftLeft((byte) ((currentInstr & 0x0F00) >> 8), (byte) ((currentInstr & 0x00F0) >> 4));
-                }
-
-                break;
-
-            case 0x09:
+                addRegVal((byte) ((op >> 8) & 0xF), (byte) op);
+                break;
+
+            case Decoder.LD_VX_VY:
+                //8xy0 - Set Vx = Vy
+                setRegReg((byte) ((op >> 8) & 0xF), (byte) ((op >> 4) & 0xF));
+                break;
+
+            case Decoder.OR:
+                //8xy1 - Set Vx = Vx or Vy
+                orRegReg((byte) ((op >> 8) & 0xF), (byte) ((op >> 4) & 0xF));
+                break;
+
+            case Decoder.AND:
+                //8xy2 - Vx = Vx AND Vy
+                andRegReg((byte) ((op >> 8) & 0xF), (byte) ((op >> 4) & 0xF));
+                break;
+
+            case Decoder.XOR:
+                //8xy3 - Set Vx = Vx XOR Vy
+                xorRegReg((byte) ((op >> 8) & 0xF), (byte) ((op >> 4) & 0xF));
+                break;
+
+            case Decoder.ADD_VX_VY:
+                //8xy4 - Set Vx = Vx + Vy, set VF = carry
+                addRegReg((byte) ((op >> 8) & 0xF), (byte) ((op >> 4) & 0xF));
+                break;
+
+            case Decoder.SUB:
+                //8xy5 - Set Vx = Vx - Vy, set VF = NOT borrow
+                subRegReg((byte) ((op >> 8) & 0xF), (byte) ((op >> 4) & 0xF));
+                break;
+
+            case Decoder.SHR:
+                //8xy6 - Set Vx = Vx SHR 1, store least significant bit in VF
+                shiftRight((byte) ((op >> 8) & 0xF), (byte) ((op >> 4) & 0xF));
+                break;
+
+            case Decoder.SUBN:
+                //8xy7 - Set Vx = Vy - Vx, set VF = NOT borrow
+                subNegativeRegReg((byte) ((op >> 8) & 0xF), (byte) ((op >> 4) & 0xF));
+                break;
+
+            case Decoder.SHL:
+                //8xyE - Set Vx = Vx SHL 1, store most significant bit on VF
+                shiftLeft((byte) ((op >> 8) & 0xF), (byte) ((op >> 4) & 0xF));
+                break;
+
+            case Decoder.SNE_VX_VY:
                 //9xy0 - Skip next instruction if Vx != Vy
-                skipNotEqualRegs((byte) ((currentInstr & 0x0F00) >> 8), (byte) ((currentInstr & 0x00F0) >> 4));
+                skipNotEqualRegs((byte) ((op >> 8) & 0xF), (byte) ((op >> 4) & 0xF));
                 break;
 
-            case 0x0A:
+            case Decoder.LD_I:
                 //Annn - set I = nnn
-                setIReg((short) (currentInstr & 0x0FFF));
+                setIReg((short) (op & 0x0FFF));
                 break;
 
-            case 0x0B:
+            case Decoder.JP_V0:
                 //Bnnn - Jump to location nnn + V0
-                jumpAddV0((short) (currentInstr & 0x0FFF));
+                jumpAddV0((short) (op & 0x0FFF));
                 break;
 
-            case 0x0C:
+            case Decoder.RND:
                 //Cxkk - Set Vx = random byte AND kk
-                rand((byte) ((currentInstr & 0x0F00) >> 8), (byte) (currentInstr & 0x0FF));
+                rand((byte) ((op >> 8) & 0xF), (byte) op);
                 break;
 
-            case 0x0D:
+            case Decoder.DRW:
                 //Dxyn - Display n-byte sprite starting at memory location I at (Vx, Vy), set VF = collision
-                draw((byte) ((currentInstr & 0x0F00) >> 8), (byte) ((currentInstr & 0x00F0) >> 4), (byte) (currentInstr & 0x0F));
-                break;
-
-            case 0x0E:
-                if ((currentInstr & 0xFF) == 0x9E) {
-                    //Ex9E - Skip next instruction if key with value of Vx is pressed.
-                    skipKeyPressed((byte) ((currentInstr & 0x0F00) >> 8));
-                } else if ((currentInstr & 0xFF) == 0xA1) {
-                    //ExA1 - Skip next instruction if key with the value of Vx is not pressed.
-                    skipKeyNotPressed((byte) ((currentInstr & 0x0F00) >> 8));
-                }
-
-                break;
-
-            case 0x0F:
-                if ((currentInstr & 0xFF) == 0x07) {
-                    //Fx07 - Set Vx = delay timer value.
-                    setRegDT((byte) ((currentInstr & 0x0F00) >> 8));
-                } else if ((currentInstr & 0xFF) == 0x0A) {
-                    //Fx0A - Wait for a key press, store the value of the key in Vx.
-                    waitKeySetReg((byte) ((currentInstr & 0x0F00) >> 8));
-                } else if ((currentInstr & 0xFF) == 0x15) {
-                    //Fx15 - Set delay timer = Vx
-                    setDTReg((byte) ((currentInstr & 0x0F00) >> 8));
-                } else if ((currentInstr & 0xFF) == 0x18) {
-                    //Fx18 - Set sound timer = Vx
-                    setSTReg((byte) ((currentInstr & 0x0F00) >> 8));
-                } else if ((currentInstr & 0xFF) == 0x1E) {
-                    //Fx1E - Set I = I + Vx
-                    setIRegSum((byte)  ((currentInstr & 0x0F00) >> 8));
-                } else if ((currentInstr & 0xFF) == 0x29) {
-                    //Fx29 - Set I = location of sprite for digit Vx
-                    setISpriteAddrReg((byte) ((currentInstr & 0x0F00) >> 8));
-                } else if ((currentInstr & 0xFF) == 0x33) {
-                    //Fx33 - Store BCD representation of Vx in memory locations I, I+1, I+2
-                    setBCDRegI((byte) ((currentInstr & 0x0F00) >> 8));
-                } else if ((currentInstr & 0xFF) == 0x55) {
-                    //Fx55 - Store registers V0 through Vx(including) in memory starting at location I.
-                    storeRegsAtI((byte) ((currentInstr & 0x0F00) >> 8));
-                } else if ((currentInstr & 0xFF) == 0x65) {
-                    //Fx65 - Read registers V0 through Vx from memory starting at location I.
-                    loadRegsAtI((byte) ((currentInstr & 0x0F00) >> 8));
-                }
+                draw((byte) ((op >> 8) & 0xF), (byte) ((op >> 4) & 0xF), (byte) (op & 0xF));
+                break;
+
+            case Decoder.SKP:
+                //Ex9E - Skip next instruction if key with value of Vx is pressed.
+                skipKeyPressed((byte) ((op >> 8) & 0xF));
+                break;
+
+            case Decoder.SKNP:
+                //ExA1 - Skip next instruction if key with the value of Vx is not pressed.
+                skipKeyNotPressed((byte) ((op >> 8) & 0xF));
+                break;
+
+            case Decoder.LD_VX_DT:
+                //Fx07 - Set Vx = delay timer value.
+                setRegDT((byte) ((op >> 8) & 0xF));
+                break;
+
+            case Decoder.LD_VX_K:
+                //Fx0A - Wait for a key press, store the value of the key in Vx.
+                waitKeySetReg((byte) ((op >> 8) & 0xF));
+                break;
+
+            case Decoder.LD_DT_VX:
+                //Fx15 - Set delay timer = Vx
+                setDTReg((byte) ((op >> 8) & 0xF));
+                break;
 
+            case Decoder.LD_ST_VX:
+                //Fx18 - Set sound timer = Vx
+                setSTReg((byte) ((op >> 8) & 0xF));
+                break;
+
+            case Decoder.ADD_I_VX:
+                //Fx1E - Set I = I + Vx
+                setIRegSum((byte) ((op >> 8) & 0xF));
+                break;
+
+            case Decoder.LD_F_VX:
+                //Fx29 - Set I = location of sprite for digit Vx
+                setISpriteAddrReg((byte) ((op >> 8) & 0xF));
+                break;
+
+            case Decoder.LD_B_VX:
+                //Fx33 - Store BCD representation of Vx in memory locations I, I+1, I+2
+                setBCDRegI((byte) ((op >> 8) & 0xF));
+                break;
+
+            case Decoder.LD_I_VX:
+                //Fx55 - Store registers V0 through Vx(including) in memory starting at location I.
+                storeRegsAtI((byte) ((op >> 8) & 0xF));
+                break;
+
+            case Decoder.LD_VX_I:
+                //Fx65 - Read registers V0 through Vx from memory starting at location I.
+                loadRegsAtI((byte) ((op >> 8) & 0xF));
                 break;
 
             default:
-                System.out.println();
+                //0nnn - SYS addr is ignored by modern interpreters, unknown instructions do nothing
                 break;
         }
     }
@@ -256,11 +474,7 @@ public class CPU {
      * Clear the display.
      */
     public void clearScreen() {
-        for (int x = 0; x < 64; x++) {
-            for (int y = 0; y < 32; y++) {
-                display.setPixel(x, y, false, false);
-            }
-        }
+        display.clear();
     }
 
     /**
@@ -271,6 +485,10 @@ public class CPU {
     public void returnSubroutine() {
         registry.PC = memory.getStack(registry.SP);
         registry.SP = (byte) (registry.SP - 1);
+
+        if (callProfiler != null) {
+            callProfiler.ret(cycles + 1);
+        }
     }
 
     /**
@@ -291,6 +509,10 @@ public class CPU {
         registry.SP = (byte) (registry.SP + 1); //increment the SP
         memory.setStack(registry.SP, registry.PC); //set stack[SP] = PC
         registry.PC = address;
+
+        if (callProfiler != null) {
+            callProfiler.call(address & Memory.ADDRESS_MASK, cycles + 1);
+        }
     }
 
     /**
@@ -627,10 +849,20 @@ public class CPU {
     /**
      * Fx0A - LD Vx, K
      * Wait for a key press, store the value of the key in Vx.
+     * The thread isn't blocked - if no key is pressed, the PC is set back to this instruction and the machine
+     * enters the wait state, so the timers keep ticking and the interpreter loop can park the thread.
      * @param reg Register to store the value in.
      */
     public void waitKeySetReg(byte reg) {
-        registry.VReg[reg] = (byte) keyboard.waitForKey();
+        int key = keyboard.getPressedKey();
+        if (key < 0) {
+            registry.PC -= 2;
+            waitingForKey = true;
+            return;
+        }
+
+        waitingForKey = false;
+        registry.VReg[reg] = (byte) key;
     }
 
     /**
@@ -0,0 +1,141 @@
+package chip8;
+
+import java.util.Arrays;
+
+/**
+ * Node of the call tree built by the CallProfiler - a subroutine called through a particular chain of calls.
+ * The same subroutine called from two different places has two nodes.
+ */
+public class CallNode {
+
+    /**
+     * Address of the subroutine, the entry point for the root.
+     */
+    private final int address;
+
+    /**
+     * Calling node, null for the root.
+     */
+    private final CallNode parent;
+
+    /**
+     * Subroutines called by this one. Only the first childCount are valid.
+     */
+    private CallNode[] children = new CallNode[0];
+    private int childCount;
+
+    /**
+     * Number of the calls of the subroutine.
+     */
+    long calls;
+
+    /**
+     * Number of the instructions executed by the subroutine itself (exclusive).
+     */
+    long instructions;
+
+    /**
+     * Number of the cycles (instructions and the cycles spent waiting for a key) spent in the subroutine itself.
+     */
+    long cycles;
+
+    /**
+     * Main constructor.
+     * @param address Address of the subroutine.
+     * @param parent Calling node, null for the root.
+     */
+    public CallNode(int address, CallNode parent) {
+        this.address = address;
+        this.parent = parent;
+    }
+
+    /**
+     * Finds the node of a subroutine called by this one, creates it on the first call.
+     * @param address Address of the called subroutine.
+     * @return Node of the called subroutine.
+     */
+    CallNode child(int address) {
+        for (int i = 0; i < childCount; i++) {
+            if (children[i].address == address) {
+                return children[i];
+            }
+        }
+        if (childCount == children.length) {
+            children = Arrays.copyOf(children, Math.max(4, childCount * 2));
+        }
+        CallNode child = new CallNode(address, this);
+        children[childCount++] = child;
+        return child;
+    }
+
+    /**
+     * @return Address of the subroutine, the entry point for the root.
+     */
+    public int getAddress() {
+        return address;
+    }
+
+    /**
+     * @return Calling node, null for the root.
+     */
+    public CallNode getParent() {
+        return parent;
+    }
+
+    /**
+     * @return Subroutines called by this one.
+     */
+    public CallNode[] getChildren() {
+        return Arrays.copyOf(children, childCount);
+    }
+
+    /**
+     * @return Number of the calls of the subroutine.
+     */
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return Number of the instructions executed by the subroutine itself.
+     */
+    public long getExclusiveInstructions() {
+        return instructions;
+    }
+
+    /**
+     * @return Number of the instructions executed by the subroutine and everything it called.
+     */
+    public long getInclusiveInstructions() {
+        long total = instructions;
+        for (int i = 0; i < childCount; i++) {
+            total += children[i].getInclusiveInstructions();
+        }
+        return total;
+    }
+
+    /**
+     * @return Number of the cycles spent in the subroutine itself.
+     */
+    public long getExclusiveCycles() {
+        return cycles;
+    }
+
+    /**
+     * @return Number of the cycles spent in the subroutine and everything it called.
+     */
+    public long getInclusiveCycles() {
+        long total = cycles;
+        for (int i = 0; i < childCount; i++) {
+            total += children[i].getInclusiveCycles();
+        }
+        return total;
+    }
+
+    /**
+     * @return Name of the node in the reports - "main" for the root, sub_ and the address for the subroutines.
+     */
+    public String getName() {
+        return parent == null ? "main" : String.format("sub_%03X", address);
+    }
+}
@@ -0,0 +1,174 @@
+package chip8;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Profiler building the call tree of the program's subroutines, driven by the calls (2nnn) and the returns (00EE).
+ * Every instruction is counted to the subroutine it's executed in, the cycles (emulated time) between two calls
+ * or returns are added to the subroutine running in between. The tree can be written as collapsed stacks,
+ * the input format of the flame graph tools, or as an indented report with the inclusive and exclusive counts.
+ */
+public class CallProfiler {
+
+    /**
+     * Maximal depth of the tree. The calls beyond it (runaway recursion) are counted to the deepest subroutine.
+     */
+    public static final int MAX_DEPTH = 64;
+
+    /**
+     * Root of the tree - the code running outside of any subroutine.
+     */
+    private final CallNode root;
+
+    /**
+     * Subroutine running now.
+     */
+    private CallNode current;
+
+    /**
+     * Depth of the current node.
+     */
+    private int depth;
+
+    /**
+     * Number of the unfinished calls beyond MAX_DEPTH, their returns don't leave the current node.
+     */
+    private int overflow;
+
+    /**
+     * Cycle of the last call or return.
+     */
+    private long lastCycle;
+
+    /**
+     * Main constructor.
+     * @param entry Address of the program's entry point.
+     * @param cycle Current value of the CPU's cycle counter.
+     */
+    public CallProfiler(int entry, long cycle) {
+        root = new CallNode(entry, null);
+        root.calls = 1;
+        current = root;
+        lastCycle = cycle;
+    }
+
+    /**
+     * Counts an executed instruction to the running subroutine. Called by the CPU.
+     */
+    public void instruction() {
+        current.instructions++;
+    }
+
+    /**
+     * Enters a subroutine. Called by the CPU when 2nnn is executed.
+     * @param address Address of the subroutine.
+     * @param cycle Cycle counter after the call instruction.
+     */
+    public void call(int address, long cycle) {
+        update(cycle);
+        if (depth >= MAX_DEPTH) {
+            overflow++;
+            return;
+        }
+        current = current.child(address);
+        current.calls++;
+        depth++;
+    }
+
+    /**
+     * Leaves the running subroutine. Called by the CPU when 00EE is executed.
+     * A return without a call (a broken stack) doesn't leave the root.
+     * @param cycle Cycle counter after the return instruction.
+     */
+    public void ret(long cycle) {
+        update(cycle);
+        if (overflow > 0) {
+            overflow--;
+        } else if (current != root) {
+            current = current.getParent();
+            depth--;
+        }
+    }
+
+    /**
+     * Adds the cycles since the last call or return to the running subroutine.
+     * Called before reading the tree, so the latest cycles are counted too.
+     * @param cycle Current value of the cycle counter.
+     */
+    public void update(long cycle) {
+        current.cycles += cycle - lastCycle;
+        lastCycle = cycle;
+    }
+
+    /**
+     * @return Root of the call tree.
+     */
+    public CallNode getRoot() {
+        return root;
+    }
+
+    /**
+     * Writes the tree as collapsed stacks - a line per node with its call chain and its exclusive cycles,
+     * e.g. "main;sub_2A0;sub_310 1234". The lines can be passed to flamegraph.pl or speedscope.
+     * @param out Appendable to write the stacks to.
+     * @throws IOException If the Appendable fails.
+     */
+    public void writeCollapsed(Appendable out) throws IOException {
+        writeCollapsed(out, root, new StringBuilder());
+    }
+
+    /**
+     * Writes the node's stack and its children's ones.
+     */
+    private void writeCollapsed(Appendable out, CallNode node, StringBuilder stack) throws IOException {
+        int length = stack.length();
+        if (length > 0) {
+            stack.append(';');
+        }
+        stack.append(node.getName());
+
+        if (node.cycles > 0) {
+            out.append(stack).append(' ').append(Long.toString(node.cycles)).append('\n');
+        }
+        for (CallNode child : node.getChildren()) {
+            writeCollapsed(out, child, stack);
+        }
+        stack.setLength(length);
+    }
+
+    /**
+     * Writes the tree as an indented report with the calls, the inclusive and exclusive instructions
+     * and the inclusive emulated time of every subroutine.
+     * @param out Appendable to write the report to.
+     * @param frequency Frequency of the CPU, to convert the cycles to the emulated time.
+     * @throws IOException If the Appendable fails.
+     */
+    public void report(Appendable out, int frequency) throws IOException {
+        out.append(String.format("%-32s %10s %14s %14s %12s %7s%n",
+                "Subroutine", "Calls", "Inclusive", "Exclusive", "Time (ms)", "Time"));
+        report(out, root, 0, frequency, Math.max(1, root.getInclusiveCycles()));
+    }
+
+    /**
+     * Writes the node's line and its children's ones, the most expensive first.
+     */
+    private void report(Appendable out, CallNode node, int level, int frequency, long total) throws IOException {
+        long inclusive = node.getInclusiveCycles();
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < level; i++) {
+            name.append("  ");
+        }
+        name.append(node.getName());
+
+        out.append(String.format("%-32s %10d %14d %14d %12.1f %6.2f%%%n", name, node.calls,
+                node.getInclusiveInstructions(), node.instructions, 1000.0 * inclusive / frequency,
+                100.0 * inclusive / total));
+
+        CallNode[] children = node.getChildren();
+        Arrays.sort(children, (a, b) -> Long.compare(b.getInclusiveCycles(), a.getInclusiveCycles()));
+        for (CallNode child : children) {
+            report(out, child, level + 1, frequency, total);
+        }
+    }
+}
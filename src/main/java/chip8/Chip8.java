@@ -1,9 +1,12 @@
 package chip8;
 
-import javax.sound.sampled.*;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * Main class representing the chip-8 interpreter.
@@ -40,6 +43,11 @@ public class Chip8 {
      */
     private Sound sound;
 
+    /**
+     * Recompiler translating hot blocks of instructions into JVM bytecode, null if turned off.
+     */
+    private Recompiler recompiler;
+
     /**
      * Disassembler used for the debugViewGUI.
      */
@@ -50,6 +58,41 @@ public class Chip8 {
      */
     private DebugViewGUI registerViewGUI;
 
+    /**
+     * Mailbox the registry's snapshots are published to for the registerViewGUI, null if it isn't used.
+     */
+    private DebugTelemetry telemetry;
+
+    /**
+     * Debugger built into the CPU - breakpoints, watchpoints, pausing and stepping.
+     */
+    private Debugger debugger;
+
+    /**
+     * Writer of the execution trace, null if the execution isn't traced.
+     */
+    private TraceWriter tracer;
+
+    /**
+     * Profiler counting the executed instructions, null if the execution isn't profiled.
+     */
+    private Profiler profiler;
+
+    /**
+     * Profiler building the call tree of the subroutines, null if the calls aren't profiled.
+     */
+    private CallProfiler callProfiler;
+
+    /**
+     * Counters of the memory's accesses, null if the accesses aren't counted.
+     */
+    private MemoryHeatmap heatmap;
+
+    /**
+     * Code coverage of the run, null if the coverage isn't recorded.
+     */
+    private Coverage coverage;
+
     /**
      * Whether to use registerViewGUI.
      */
@@ -60,6 +103,11 @@ public class Chip8 {
      */
     private int CPU_FREQ = 500;
 
+    /**
+     * Sink capturing the sound timer's output in emulated time, null if the audio isn't captured.
+     */
+    private AudioCapture audioCapture;
+
     /**
      * Whether the sound is unavailable on current machine.
      */
@@ -83,12 +131,58 @@ public class Chip8 {
      */
     boolean overlappingMode;
 
+    /**
+     * Whether the interpreter runs without a window and sound, as fast as possible.
+     * Headless mode never touches AWT or javax.sound, so it can be used on machines without a graphical environment.
+     */
+    boolean headless;
+
+    /**
+     * Whether the turbo mode is turned on - the interpreter runs as fast as the host allows.
+     */
+    private volatile boolean turbo;
+
+    /**
+     * Whether the CPU loop is currently running unthrottled (turbo mode, fast-forward key or headless mode).
+     */
+    private volatile boolean fastForward;
+
+    /**
+     * Whether the main loop should keep running, cleared by stop().
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Whether the main loop has started.
+     */
+    private volatile boolean looping;
+
+    /**
+     * Counted down when the main loop has ended.
+     */
+    private final CountDownLatch loopEnded = new CountDownLatch(1);
+
+    /**
+     * When running unthrottled, the speed meter is updated every this many frames.
+     */
+    private static final int FAST_METER_FRAMES = 64;
+
+    /**
+     * Number of the hottest addresses listed in the profiler's report.
+     */
+    private static final int PROFILE_HOTTEST = 20;
+
+    /**
+     * Meter of the CPU's instructions per second.
+     */
+    private SpeedMeter speedMeter;
+
     /**
      * Chip-8's constructor initializing all the parameters at the default values.
      * @param filename Filename/path of the chip-8 ROM.
      */
     public Chip8(String filename) throws IOException {
-        new Chip8(filename, 500, false, true, true, false);
+        this(filename, 500, false, true, true, false, false);
     }
 
     /**
@@ -98,34 +192,40 @@ public class Chip8 {
      * @param loadStoreQuirk Whether to use load-store quirk, false by default.
      * @param shiftQuirk Whether to use shift quirk, true by default.
      * @param overlappingMode Whether to use overlapping mode, true by default.
-     * @param registerGUIFlag Whether to use debug view window, false by default.
+     * @param registerGUIFlag Whether to use debug view window, false by default. Ignored in headless mode.
+     * @param headless Whether to run without a window and sound, false by default.
      */
-    public Chip8(String filename, int cpuFreq, boolean loadStoreQuirk, boolean shiftQuirk, boolean overlappingMode, boolean registerGUIFlag) throws IOException {
+    public Chip8(String filename, int cpuFreq, boolean loadStoreQuirk, boolean shiftQuirk, boolean overlappingMode, boolean registerGUIFlag, boolean headless) throws IOException {
         //quirks
         this.loadStoreQuirk = loadStoreQuirk;
         this.shiftQuirk = shiftQuirk;
         this.overlappingMode = overlappingMode;
 
         this.CPU_FREQ = cpuFreq;
-        this.registerGUIFlag = registerGUIFlag;
+        this.headless = headless;
+        this.registerGUIFlag = registerGUIFlag && !headless;
 
-        soundUnavailable = false;
+        speedMeter = new SpeedMeter(false);
 
         //initializing fields
         memory = new Memory();
         keyboard = new Keyboard();
         registry = new Registry();
-        display = new SwingGUI(12, memory, keyboard, overlappingMode);
+        if (headless) {
+            display = new HeadlessDisplay(memory, overlappingMode);
+        } else {
+            display = new SwingGUI(12, memory, keyboard, overlappingMode);
+        }
         cpu = new CPU(memory, registry, display, keyboard, loadStoreQuirk, shiftQuirk);
+        debugger = new Debugger();
+        cpu.setDebugger(debugger);
         disassembler = new Disassembler(memory);
 
-        //trying to initialize the sound system
-        try {
-            sound = new Sound();
-        } catch (LineUnavailableException e) {
-            e.printStackTrace();
-            soundUnavailable = true;
+        //trying to initialize the sound system, headless mode has no sound at all
+        if (!headless) {
+            sound = Sound.open();
         }
+        soundUnavailable = sound == null;
 
         //loading the rom
         int size;
@@ -134,68 +234,460 @@ public class Chip8 {
 
         display.createGUI();
 
-        if (registerGUIFlag) {
-            registerViewGUI = new DebugViewGUI(registry, disassembler);
+        if (this.registerGUIFlag) {
+            telemetry = new DebugTelemetry();
+            registerViewGUI = new DebugViewGUI(telemetry, debugger, disassembler);
             registerViewGUI.createGUI();
         }
     }
 
     /**
      * Chip-8's main fetch-decode-execute loop.
+     * The CPU executes CPU_FREQ / 60 instructions per frame and then waits for the next 60Hz frame,
+     * so the host thread wakes up 60 times per second, no matter the frequency.
+     * In turbo mode (or while the fast-forward key is held) frames aren't waited for,
+     * timers are decremented in emulated time and the sound is muted.
+     * Runs until stop() is called.
      */
     public void loop() {
+        loop(Long.MAX_VALUE);
+    }
+
+    /**
+     * Runs the main loop for a given number of frames.
+     * @param frames Number of the frames to run.
+     */
+    void loop(long frames) {
+        looping = true;
+        try {
+            runFrames(frames);
+        } finally {
+            if (!soundUnavailable) {
+                sound.setTone(false);
+            }
+            loopEnded.countDown();
+        }
+    }
+
+    /**
+     * Runs the frames of the main loop, until the given number of frames has passed or the loop is stopped.
+     * @param frames Number of the frames to run.
+     */
+    private void runFrames(long frames) {
 
         final int TIMER_TICK = 1000 / 60;
-        final int CPU_TICK = 1000 / CPU_FREQ;
 
         //timer to call at 60Hz frequency - decrementing timers and rendering the screen
-        Timer delayTimer = new Timer();
-        delayTimer.schedule(new DelayTask(), TIMER_TICK, TIMER_TICK);
+        //headless mode has nothing to render and decrements the timers in emulated time
+        Timer delayTimer = null;
+        if (!headless) {
+            delayTimer = new Timer();
+            delayTimer.schedule(new DelayTask(), TIMER_TICK, TIMER_TICK);
+        }
+
+        FrameScheduler scheduler = new FrameScheduler(CPU_FREQ);
+        int fastFrames = 0;
 
-        while (true) {
+        try {
+            for (long frame = 0; frame < frames && running; frame++) {
+
+                execute(scheduler.nextFrameBudget());
+                publishFrame();
 
-            cpu.fetch();
+                //a paused machine only waits for the debugger's commands, frame by frame
+                boolean paused = cpu.isPaused();
+                boolean fast = (headless || turbo || keyboard.isFastForwardPressed()) && !paused;
 
-            cpu.incrementPC();
+                if (paused && !soundUnavailable) {
+                    sound.setTone(false);
+                }
 
-            cpu.decodeAndExecute();
+                if (fast != fastForward) {
+                    fastForward = fast;
+                    if (fast && !soundUnavailable) {
+                        sound.setTone(false);
+                    }
+                    if (!fast) {
+                        //frames counted in turbo mode were ahead of the real time
+                        scheduler.resync();
+                    }
+                }
 
-            try {
-                Thread.sleep(CPU_TICK);
-            } catch (Exception e) {
-                e.printStackTrace();
+                if (fast) {
+                    //one emulated frame has passed
+                    decrementTimers(false);
+
+                    //a machine waiting for a key has nothing to fast-forward, the thread is parked for a frame instead
+                    if (cpu.isWaitingForKey()) {
+                        keyboard.awaitEvent(FrameScheduler.FRAME_NANOS);
+                    }
+
+                    //reading the clock every frame would be noticeable at this speed
+                    if (++fastFrames % FAST_METER_FRAMES == 0) {
+                        speedMeter.update(cpu.getCycles());
+                    }
+                } else {
+                    scheduler.waitForNextFrame();
+                    speedMeter.update(cpu.getCycles());
+                }
+            }
+        } finally {
+            //the timers stop with the loop
+            if (delayTimer != null) {
+                delayTimer.cancel();
             }
         }
     }
 
     /**
-     * Method called at the 60Hz frequency, rendering the screen, updating the registers on the debug GUI
+     * Stops the main loop at the end of the current frame and waits until it has ended, so the trace,
+     * the profilers and the coverage can be written out from another thread (e.g. a shutdown hook)
+     * while nothing is executed. Returns at once if the loop hasn't started, it won't execute anything then.
+     */
+    public void stop() {
+        running = false;
+        if (!looping) {
+            return;
+        }
+        try {
+            loopEnded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Executes a given number of instructions as fast as possible, without starting the timer thread.
+     * The delay and sound timers are decremented every CPU_FREQ / 60 instructions, so the program sees
+     * the same timing as it would at the configured frequency. Intended for the headless mode.
+     * Returns early if the debugger pauses the machine.
+     * @param cycles Number of instructions to execute.
+     */
+    public void runCycles(long cycles) {
+        final int CYCLES_PER_TIMER_TICK = Math.max(1, CPU_FREQ / 60);
+
+        long frames = 0;
+        while (cycles > 0) {
+            int chunk = (int) Math.min(cycles, CYCLES_PER_TIMER_TICK);
+            execute(chunk);
+            publishFrame();
+            cycles -= chunk;
+
+            if (cpu.isPaused()) {
+                return;
+            }
+
+            //only whole frames decrement the timers
+            if (chunk == CYCLES_PER_TIMER_TICK) {
+                renderAndDecrementTimers();
+
+                if (++frames % FAST_METER_FRAMES == 0) {
+                    speedMeter.update(cpu.getCycles());
+                }
+            }
+        }
+    }
+
+    /**
+     * Executes the given number of cycles, with the recompiler if it's turned on, otherwise with the interpreter.
+     * The cycles are split at the queued key events, so every event is applied exactly at the cycle it's stamped with.
+     * Cycles the machine spends waiting for a key press (Fx0A) pass idle, so the emulated time keeps running.
+     * While the debugger is armed or the execution is traced, profiled or covered, every instruction goes through
+     * the interpreter. A paused machine ends the frame.
+     * @param cycles Number of cycles to execute.
+     */
+    private void execute(int cycles) {
+        long end = cpu.getCycles() + cycles;
+
+        while (cpu.getCycles() < end) {
+            long now = cpu.getCycles();
+            keyboard.applyEvents(now);
+            long until = Math.min(end, keyboard.getNextEventCycle());
+
+            if (recompiler != null && !cpu.isInstrumented()) {
+                recompiler.run((int) (until - now));
+            } else {
+                for (long i = now; i < until; i++) {
+                    cpu.step();
+                    if (cpu.isWaitingForKey() || cpu.isPaused()) {
+                        break;
+                    }
+                }
+            }
+
+            if (cpu.isPaused()) {
+                return;
+            }
+
+            //nothing changes until the next key event
+            if (cpu.isWaitingForKey() && cpu.getCycles() < until) {
+                cpu.addCycles(until - cpu.getCycles());
+            }
+        }
+    }
+
+    /**
+     * Turns the recompiler on or off. The recompiler translates frequently executed blocks of instructions
+     * into JVM bytecode, which runs much faster than the interpreter.
+     * @param enabled True to turn the recompiler on, false to use the interpreter only.
+     */
+    public void setRecompilerEnabled(boolean enabled) {
+        if (enabled && recompiler == null) {
+            recompiler = new Recompiler(cpu, registry, memory, shiftQuirk);
+        } else if (!enabled) {
+            recompiler = null;
+        }
+    }
+
+    /**
+     * @return Chip-8's display.
+     */
+    public Display getDisplay() {
+        return display;
+    }
+
+    /**
+     * @return Chip-8's registry.
+     */
+    public Registry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @return Chip-8's memory.
+     */
+    public Memory getMemory() {
+        return memory;
+    }
+
+    /**
+     * @return Chip-8's keyboard.
+     */
+    public Keyboard getKeyboard() {
+        return keyboard;
+    }
+
+    /**
+     * @return Debugger built into the CPU, controls the breakpoints, watchpoints, pausing and stepping.
+     */
+    public Debugger getDebugger() {
+        return debugger;
+    }
+
+    /**
+     * @return Instructions per second executed by the CPU, measured over the last second.
+     */
+    public long getInstructionsPerSecond() {
+        return speedMeter.getInstructionsPerSecond();
+    }
+
+    /**
+     * Sets whether the measured instructions per second should be printed out every second.
+     * @param printFlag True to print out the measured value.
+     */
+    public void setPrintInstructionsPerSecond(boolean printFlag) {
+        speedMeter = new SpeedMeter(printFlag);
+    }
+
+    /**
+     * Starts capturing the sound timer's output in emulated time, e.g. to compare it with a golden file on CI.
+     * Works in every mode, including headless and turbo.
+     * @return Capture holding the rendered samples.
+     */
+    public AudioCapture startAudioCapture() {
+        audioCapture = new AudioCapture();
+        return audioCapture;
+    }
+
+    /**
+     * Starts counting the executed instructions per type and per address.
+     * The profiled instructions are run by the interpreter, the recompiler is bypassed.
+     * @return The profiler.
+     */
+    public Profiler startProfiler() {
+        profiler = new Profiler();
+        cpu.setProfiler(profiler);
+        return profiler;
+    }
+
+    /**
+     * Writes the profiler's report, with the hottest addresses disassembled.
+     * @param out Appendable to write the report to.
+     * @throws IOException If the Appendable fails.
+     */
+    public void reportProfile(Appendable out) throws IOException {
+        if (profiler != null) {
+            profiler.report(out, disassembler, PROFILE_HOTTEST);
+        }
+    }
+
+    /**
+     * Starts counting the memory's accesses and shows them in the heatmap window (unless in headless mode).
+     * @param decay Whether the counts should decay every frame, to show the recent accesses only.
+     * @return The counters.
+     */
+    public MemoryHeatmap startHeatmap(boolean decay) {
+        heatmap = new MemoryHeatmap(decay);
+        memory.setHeatmap(heatmap);
+        if (!headless) {
+            new HeatmapGUI(heatmap).createGUI();
+        }
+        return heatmap;
+    }
+
+    /**
+     * Starts recording the code coverage - the executed instructions and the directions of the skips.
+     * The covered instructions are run by the interpreter, the recompiler is bypassed.
+     * @return The coverage.
+     */
+    public Coverage startCoverage() {
+        coverage = new Coverage();
+        cpu.setCoverage(coverage);
+        return coverage;
+    }
+
+    /**
+     * Writes the recorded coverage to a file. Does nothing if the coverage isn't recorded.
+     * @param path Path to the coverage file.
+     * @throws IOException If the file can't be written.
+     */
+    public void writeCoverage(String path) throws IOException {
+        if (coverage != null) {
+            coverage.write(path);
+        }
+    }
+
+    /**
+     * Starts building the call tree of the subroutines from the calls and the returns.
+     * The profiled instructions are run by the interpreter, the recompiler is bypassed.
+     * @return The profiler.
+     */
+    public CallProfiler startCallProfiler() {
+        callProfiler = new CallProfiler(registry.PC & Memory.ADDRESS_MASK, cpu.getCycles());
+        cpu.setCallProfiler(callProfiler);
+        return callProfiler;
+    }
+
+    /**
+     * Writes the call tree as collapsed stacks to a file and prints out the call tree's report.
+     * Does nothing if the calls aren't profiled.
+     * @param path Path to the collapsed stacks' file.
+     * @throws IOException If the file can't be written.
+     */
+    public void writeCallGraph(String path) throws IOException {
+        if (callProfiler == null) {
+            return;
+        }
+        callProfiler.update(cpu.getCycles());
+        try (Writer out = new BufferedWriter(new FileWriter(path))) {
+            callProfiler.writeCollapsed(out);
+        }
+        callProfiler.report(System.out, CPU_FREQ);
+    }
+
+    /**
+     * Starts recording every executed instruction to a binary trace file.
+     * The traced instructions are run by the interpreter, the recompiler is bypassed.
+     * @param path Path to the trace file, overwritten if it exists.
+     * @throws IOException If the file can't be created.
+     */
+    public void startTrace(String path) throws IOException {
+        stopTrace();
+        tracer = new TraceWriter(path, memory, display, registry);
+        cpu.setTracer(tracer);
+    }
+
+    /**
+     * Stops recording the trace and closes the file. Does nothing if the execution isn't traced.
+     * @throws IOException If the file can't be closed.
+     */
+    public void stopTrace() throws IOException {
+        if (tracer != null) {
+            cpu.setTracer(null);
+            tracer.close();
+            tracer = null;
+        }
+    }
+
+    /**
+     * Reopens the sound system with a different line buffer size.
+     * Smaller buffer lowers the beep's latency, but the sound may crackle on a busy machine.
+     * @param bufferSize Size of the line's buffer (in samples).
+     */
+    public void setAudioBufferSize(int bufferSize) {
+        if (soundUnavailable) {
+            return;
+        }
+        sound.close();
+        sound = Sound.open(bufferSize);
+        soundUnavailable = sound == null;
+    }
+
+    /**
+     * Turns the turbo mode on or off. In turbo mode the interpreter runs as fast as the host allows.
+     * @param turbo True to turn the turbo mode on, false to turn it off.
+     */
+    public void setTurbo(boolean turbo) {
+        this.turbo = turbo;
+    }
+
+    /**
+     * Publishes the screen and the registry's snapshot at the end of an emulated frame.
+     * Only hands the state over, the display and the debug GUI render it on their own threads.
+     */
+    private void publishFrame() {
+        display.publishFrame();
+
+        if (telemetry != null) {
+            telemetry.publish(registry, cpu.getCycles());
+        }
+        if (heatmap != null) {
+            heatmap.frame();
+        }
+    }
+
+    /**
+     * Method called at the 60Hz frequency, rendering the screen
      * and decrementing the timers (delay timer, sound timer).
      * Chip-8's timers should be decremented at rate of 60Hz by default.
      */
     public void renderAndDecrementTimers() {
-        display.render();
+        render();
 
-        if (registerGUIFlag) {
-            registerViewGUI.updateRegisters();
-            registerViewGUI.updateInstructions();
-        }
+        decrementTimers(true);
+    }
 
+    /**
+     * Renders the screen. The debug GUI pulls the registry's snapshots by itself.
+     */
+    private void render() {
+        display.render();
+    }
+
+    /**
+     * Decrements the timers (delay timer, sound timer).
+     * @param playSound Whether to play the sound while the sound timer is active.
+     */
+    private void decrementTimers(boolean playSound) {
         if ((registry.DT & 0xFF) > 0) {
             registry.DT--;
         }
 
         //according to mattmikolay's reference, minimum value that the timer will respond to is 0x02
-        if ((registry.ST & 0xFF) > 0x1) {
-            if (soundUnavailable) {
-                registry.ST--;
-            } else {
-                sound.startSound();
-                registry.ST--;
-                if (registry.ST <= 0x1) {
-                    sound.stopSound();
-                }
-            }
+        //the tone plays during every frame the timer counts down, so even ST = 2 gives a beep of one frame
+        boolean toneOn = (registry.ST & 0xFF) > 0x1;
+        if (toneOn) {
+            registry.ST--;
+        }
+
+        //the audio thread plays the tone while the timer is active, this only hands over the state
+        if (!soundUnavailable) {
+            sound.setTone(playSound && toneOn);
+        }
+
+        //the capture runs in emulated time, so it isn't muted in turbo mode
+        if (audioCapture != null) {
+            audioCapture.renderFrame(toneOn);
         }
     }
 
@@ -205,7 +697,13 @@ public class Chip8 {
     class DelayTask extends TimerTask {
         @Override
         public void run() {
-            renderAndDecrementTimers();
+            //when fast-forwarding the timers are decremented by the CPU loop, in emulated time
+            //and they don't run at all while the machine is paused
+            if (fastForward || cpu.isPaused()) {
+                render();
+            } else {
+                renderAndDecrementTimers();
+            }
         }
     }
 }
@@ -0,0 +1,339 @@
+package chip8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Minimal writer of JVM class files, used by the BlockCompiler to generate the compiled blocks.
+ * It writes a public final class with a default constructor and a single method, given as raw bytecode.
+ * Classes are written in version 49 (Java 5), so the JVM verifies them by type inference
+ * and no stack map frames have to be computed.
+ */
+public class ClassFileWriter {
+
+    //bytecode instructions used by the compiler
+    public static final int ICONST_0 = 0x03;
+    public static final int ICONST_1 = 0x04;
+    public static final int BIPUSH = 0x10;
+    public static final int SIPUSH = 0x11;
+    public static final int ILOAD = 0x15;
+    public static final int ALOAD_0 = 0x2A;
+    public static final int ALOAD_1 = 0x2B;
+    public static final int ALOAD_2 = 0x2C;
+    public static final int ALOAD_3 = 0x2D;
+    public static final int BALOAD = 0x33;
+    public static final int ISTORE = 0x36;
+    public static final int ASTORE_3 = 0x4E;
+    public static final int BASTORE = 0x54;
+    public static final int IADD = 0x60;
+    public static final int ISUB = 0x64;
+    public static final int ISHL = 0x78;
+    public static final int ISHR = 0x7A;
+    public static final int IUSHR = 0x7C;
+    public static final int IAND = 0x7E;
+    public static final int IOR = 0x80;
+    public static final int IXOR = 0x82;
+    public static final int I2B = 0x91;
+    public static final int I2S = 0x93;
+    public static final int IF_ICMPEQ = 0x9F;
+    public static final int IF_ICMPNE = 0xA0;
+    public static final int GOTO = 0xA7;
+    public static final int IRETURN = 0xAC;
+    public static final int RETURN = 0xB1;
+    public static final int GETFIELD = 0xB4;
+    public static final int PUTFIELD = 0xB5;
+    public static final int INVOKEVIRTUAL = 0xB6;
+    public static final int INVOKESPECIAL = 0xB7;
+
+    //constant pool tags
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    //access flags
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    /**
+     * Serialized constant pool entries.
+     */
+    private ByteArrayOutputStream pool = new ByteArrayOutputStream();
+
+    /**
+     * Indexes of the already added constant pool entries, so each entry is added only once.
+     */
+    private HashMap<String, Integer> poolIndexes = new HashMap<>();
+
+    /**
+     * Number of the constant pool entries + 1 (index 0 is unused).
+     */
+    private int poolCount = 1;
+
+    /**
+     * Bytecode of the generated method.
+     */
+    private ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+    /**
+     * Internal name of the written class (e.g. chip8/gen/Block200).
+     */
+    private String className;
+
+    /**
+     * Main constructor.
+     * @param className Internal name of the written class, with slashes instead of dots.
+     */
+    public ClassFileWriter(String className) {
+        this.className = className;
+    }
+
+    /**
+     * Emits a single byte of the bytecode.
+     * @param value Instruction or operand.
+     */
+    public void emit(int value) {
+        code.write(value);
+    }
+
+    /**
+     * Emits a 2 byte operand of the bytecode.
+     * @param value Operand.
+     */
+    public void emitShort(int value) {
+        code.write(value >> 8);
+        code.write(value);
+    }
+
+    /**
+     * Emits an instruction pushing an int constant on the stack, using the shortest form.
+     * @param value Constant to push, from -32768 to 32767.
+     */
+    public void pushInt(int value) {
+        if (value >= -128 && value <= 127) {
+            emit(BIPUSH);
+            emit(value);
+        } else {
+            emit(SIPUSH);
+            emitShort(value);
+        }
+    }
+
+    /**
+     * Emits a field access instruction.
+     * @param opcode GETFIELD or PUTFIELD.
+     * @param owner Internal name of the class declaring the field.
+     * @param name Name of the field.
+     * @param descriptor Type descriptor of the field.
+     */
+    public void emitField(int opcode, String owner, String name, String descriptor) {
+        emit(opcode);
+        emitShort(memberRef(CONSTANT_FIELDREF, owner, name, descriptor));
+    }
+
+    /**
+     * Emits a method call instruction.
+     * @param opcode INVOKEVIRTUAL or INVOKESPECIAL.
+     * @param owner Internal name of the class declaring the method.
+     * @param name Name of the method.
+     * @param descriptor Type descriptor of the method.
+     */
+    public void emitInvoke(int opcode, String owner, String name, String descriptor) {
+        emit(opcode);
+        emitShort(memberRef(CONSTANT_METHODREF, owner, name, descriptor));
+    }
+
+    /**
+     * Emits a branch instruction with a placeholder offset.
+     * @param opcode Branch instruction.
+     * @return Position of the branch, to be passed to patchBranch.
+     */
+    public int emitBranch(int opcode) {
+        int position = code.size();
+        emit(opcode);
+        emitShort(0);
+        return position;
+    }
+
+    /**
+     * Sets the offset of an already emitted branch, so it jumps to the current end of the bytecode.
+     * @param position Position of the branch, returned by emitBranch.
+     */
+    public void patchBranch(int position) {
+        byte[] bytes = code.toByteArray();
+        int offset = bytes.length - position;
+        bytes[position + 1] = (byte) (offset >> 8);
+        bytes[position + 2] = (byte) offset;
+        code.reset();
+        code.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes the class file. The class extends Object, implements the given interface,
+     * has a public default constructor and a single public method with the emitted bytecode.
+     * @param interfaceName Internal name of the implemented interface.
+     * @param methodName Name of the method.
+     * @param methodDescriptor Type descriptor of the method.
+     * @param maxStack Maximum depth of the operand stack used by the method.
+     * @param maxLocals Number of the local variables used by the method (including this and the arguments).
+     * @return Bytes of the class file.
+     */
+    public byte[] toByteArray(String interfaceName, String methodName, String methodDescriptor, int maxStack, int maxLocals) {
+        try {
+            int thisIndex = classRef(className);
+            int superIndex = classRef("java/lang/Object");
+            int interfaceIndex = classRef(interfaceName);
+            int superConstructor = memberRef(CONSTANT_METHODREF, "java/lang/Object", "<init>", "()V");
+            int codeName = utf8("Code");
+            int constructorName = utf8("<init>");
+            int constructorDescriptor = utf8("()V");
+            int methodNameIndex = utf8(methodName);
+            int methodDescriptorIndex = utf8(methodDescriptor);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(1);
+            out.writeShort(interfaceIndex);
+
+            //no fields
+            out.writeShort(0);
+
+            out.writeShort(2);
+
+            //public default constructor calling Object's constructor
+            byte[] constructorCode = new byte[] {
+                    (byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (superConstructor >> 8), (byte) superConstructor, (byte) RETURN
+            };
+            writeMethod(out, constructorName, constructorDescriptor, codeName, constructorCode, 1, 1);
+
+            writeMethod(out, methodNameIndex, methodDescriptorIndex, codeName, code.toByteArray(), maxStack, maxLocals);
+
+            //no class attributes
+            out.writeShort(0);
+
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            //writing to a byte array never fails
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes a single public method with a Code attribute.
+     */
+    private void writeMethod(DataOutputStream out, int name, int descriptor, int codeName, byte[] bytecode,
+                             int maxStack, int maxLocals) throws IOException {
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+
+        out.writeShort(codeName);
+        //max stack, max locals, code length, code, exception table length, attributes count
+        out.writeInt(2 + 2 + 4 + bytecode.length + 2 + 2);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(bytecode.length);
+        out.write(bytecode);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    /**
+     * Adds an Utf8 constant to the pool.
+     * @return Index of the constant.
+     */
+    private int utf8(String value) {
+        String key = "U" + value;
+        Integer index = poolIndexes.get(key);
+        if (index != null) {
+            return index;
+        }
+
+        DataOutputStream out = new DataOutputStream(pool);
+        try {
+            out.writeByte(CONSTANT_UTF8);
+            out.writeUTF(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return addEntry(key);
+    }
+
+    /**
+     * Adds a Class constant to the pool.
+     * @return Index of the constant.
+     */
+    private int classRef(String name) {
+        String key = "C" + name;
+        Integer index = poolIndexes.get(key);
+        if (index != null) {
+            return index;
+        }
+
+        int nameIndex = utf8(name);
+        pool.write(CONSTANT_CLASS);
+        writePoolShort(nameIndex);
+        return addEntry(key);
+    }
+
+    /**
+     * Adds a Fieldref, Methodref or InterfaceMethodref constant to the pool.
+     * @return Index of the constant.
+     */
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        String key = tag + owner + "." + name + ":" + descriptor;
+        Integer index = poolIndexes.get(key);
+        if (index != null) {
+            return index;
+        }
+
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+
+        pool.write(CONSTANT_NAME_AND_TYPE);
+        writePoolShort(nameIndex);
+        writePoolShort(descriptorIndex);
+        int nameAndType = addEntry("N" + name + ":" + descriptor + "#" + poolCount);
+
+        pool.write(tag);
+        writePoolShort(ownerIndex);
+        writePoolShort(nameAndType);
+        return addEntry(key);
+    }
+
+    /**
+     * Writes a 2 byte value to the constant pool.
+     */
+    private void writePoolShort(int value) {
+        pool.write(value >> 8);
+        pool.write(value);
+    }
+
+    /**
+     * Registers the just written constant pool entry.
+     * @return Index of the entry.
+     */
+    private int addEntry(String key) {
+        int index = poolCount;
+        poolIndexes.put(key, index);
+        poolCount++;
+        return index;
+    }
+}
@@ -0,0 +1,15 @@
+package chip8;
+
+/**
+ * Interface of a basic block of chip-8's instructions translated into JVM bytecode by the BlockCompiler.
+ */
+public interface CompiledBlock {
+
+    /**
+     * Executes all the instructions of the block and sets the PC to the next instruction to execute.
+     * @param cpu Reference to the CPU, used for the instructions that aren't translated (e.g. drawing).
+     * @param registry Reference to the registry.
+     * @return Number of the executed instructions.
+     */
+    int execute(CPU cpu, Registry registry);
+}
@@ -0,0 +1,320 @@
+package chip8;
+
+import java.util.ArrayList;
+
+/**
+ * Control-flow graph of a chip-8 program, built by a recursive-descent analysis.
+ * Unlike the linear Disassembler, it follows the jumps (1nnn), calls (2nnn), returns (00EE) and skips
+ * from the entry point, so only the reachable instructions are treated as code. Everything else - sprites,
+ * tables - is data. Bnnn is an indirect jump, its targets depend on V0 and aren't followed.
+ * The graph is an immutable snapshot of the memory at the time of the analysis, usable by the debugger,
+ * the profilers or a precompilation tier.
+ */
+public class ControlFlowGraph {
+
+    //types of the bytes in the code/data map
+    public static final byte UNKNOWN = 0;
+    public static final byte CODE = 1;
+    public static final byte OPERAND = 2;
+    public static final byte DATA = 3;
+
+    /**
+     * Type of each byte of the memory: UNKNOWN (never reached), CODE (first byte of an instruction),
+     * OPERAND (second byte of an instruction) or DATA (referenced by Annn and not executed).
+     */
+    private final byte[] map = new byte[4096];
+
+    /**
+     * Blocks indexed by their start address, null if no block begins at the address.
+     */
+    private final BasicBlock[] blocksByAddress = new BasicBlock[4096];
+
+    /**
+     * Block containing each instruction, indexed by the instruction's address.
+     */
+    private final BasicBlock[] blockOf = new BasicBlock[4096];
+
+    /**
+     * Whether a subroutine (target of 2nnn) begins at the address.
+     */
+    private final boolean[] subroutines = new boolean[4096];
+
+    /**
+     * All the blocks, sorted by their start address.
+     */
+    private BasicBlock[] blocks;
+
+    /**
+     * Address the analysis started at.
+     */
+    private final int entry;
+
+    /**
+     * The graph is created by analyze().
+     */
+    private ControlFlowGraph(int entry) {
+        this.entry = entry;
+    }
+
+    /**
+     * Analyses the program beginning at 0x200.
+     * @param memory Memory holding the program.
+     * @return Control-flow graph of the program.
+     */
+    public static ControlFlowGraph analyze(Memory memory) {
+        return analyze(memory, 0x200);
+    }
+
+    /**
+     * Analyses the program beginning at the entry point.
+     * @param memory Memory holding the program.
+     * @param entry Address of the first executed instruction.
+     * @return Control-flow graph of the program.
+     */
+    public static ControlFlowGraph analyze(Memory memory, int entry) {
+        ControlFlowGraph graph = new ControlFlowGraph(entry);
+        int[] ops = new int[4096];
+        boolean[] leaders = graph.markCode(memory, ops, entry);
+        graph.buildBlocks(ops, leaders);
+        return graph;
+    }
+
+    /**
+     * Follows the control flow from the entry point and marks the reached instructions in the map.
+     * @param ops Array the decoded instructions are stored to, indexed by the address.
+     * @return Leaders - addresses beginning the basic blocks (the entry, targets of the jumps and the skips).
+     */
+    private boolean[] markCode(Memory memory, int[] ops, int entry) {
+        boolean[] leaders = new boolean[4096];
+        boolean[] queued = new boolean[4096];
+        int[] worklist = new int[4096];
+        int top = 0;
+
+        if (fits(entry)) {
+            leaders[entry] = true;
+            queued[entry] = true;
+            worklist[top++] = entry;
+        }
+
+        while (top > 0) {
+            int address = worklist[--top];
+
+            //walks the instructions until the flow leaves them or reaches an already analysed instruction
+            while (fits(address) && map[address] != CODE) {
+                int op = Decoder.decode(((memory.peek(address) & 0xFF) << 8) | (memory.peek(address + 1) & 0xFF));
+                ops[address] = op;
+                map[address] = CODE;
+                if (map[address + 1] != CODE) {
+                    map[address + 1] = OPERAND;
+                }
+
+                int next = address + 2;
+                int nnn = op & 0xFFF;
+                int target = -1;
+                boolean continues = true;
+
+                switch (Decoder.number(op)) {
+                    case Decoder.JP:
+                        target = nnn;
+                        continues = false;
+                        break;
+
+                    case Decoder.CALL:
+                        //the subroutine returns to the next instruction, which begins a new block
+                        target = nnn;
+                        if (fits(nnn)) {
+                            subroutines[nnn] = true;
+                        }
+                        if (fits(next)) {
+                            leaders[next] = true;
+                        }
+                        break;
+
+                    case Decoder.RET:
+                    case Decoder.JP_V0:
+                        continues = false;
+                        break;
+
+                    case Decoder.SE_VX_KK:
+                    case Decoder.SNE_VX_KK:
+                    case Decoder.SE_VX_VY:
+                    case Decoder.SNE_VX_VY:
+                    case Decoder.SKP:
+                    case Decoder.SKNP:
+                        target = next + 2;
+                        if (fits(next)) {
+                            leaders[next] = true;
+                        }
+                        break;
+
+                    case Decoder.LD_I:
+                        //I usually points to sprites or tables
+                        if (map[nnn] == UNKNOWN) {
+                            map[nnn] = DATA;
+                        }
+                        break;
+
+                    default:
+                        break;
+                }
+
+                if (target >= 0 && fits(target)) {
+                    leaders[target] = true;
+                    if (!queued[target]) {
+                        queued[target] = true;
+                        worklist[top++] = target;
+                    }
+                }
+
+                if (!continues) {
+                    break;
+                }
+                address = next;
+            }
+        }
+
+        return leaders;
+    }
+
+    /**
+     * Splits the marked instructions into basic blocks, at the leaders and after the control-flow instructions.
+     * @param ops Decoded instructions, indexed by the address.
+     * @param leaders Addresses beginning the basic blocks.
+     */
+    private void buildBlocks(int[] ops, boolean[] leaders) {
+        ArrayList<BasicBlock> list = new ArrayList<>();
+
+        for (int start = 0; start < 0xFFF; start++) {
+            if (!leaders[start] || map[start] != CODE) {
+                continue;
+            }
+
+            int address = start;
+            int[] successors = null;
+            int callTarget = -1;
+            boolean indirect = false;
+
+            while (successors == null) {
+                int op = ops[address];
+                int next = address + 2;
+
+                switch (Decoder.number(op)) {
+                    case Decoder.JP:
+                        successors = new int[] {op & 0xFFF};
+                        break;
+
+                    case Decoder.CALL:
+                        callTarget = op & 0xFFF;
+                        successors = new int[] {next};
+                        break;
+
+                    case Decoder.RET:
+                        successors = new int[0];
+                        break;
+
+                    case Decoder.JP_V0:
+                        indirect = true;
+                        successors = new int[0];
+                        break;
+
+                    case Decoder.SE_VX_KK:
+                    case Decoder.SNE_VX_KK:
+                    case Decoder.SE_VX_VY:
+                    case Decoder.SNE_VX_VY:
+                    case Decoder.SKP:
+                    case Decoder.SKNP:
+                        successors = new int[] {next, next + 2};
+                        break;
+
+                    default:
+                        //the block ends before the next leader, or where the code ends
+                        if (!fits(next) || map[next] != CODE) {
+                            successors = new int[0];
+                        } else if (leaders[next]) {
+                            successors = new int[] {next};
+                        }
+                        break;
+                }
+
+                address = next;
+            }
+
+            BasicBlock block = new BasicBlock(start, address, successors, callTarget, indirect);
+            list.add(block);
+            blocksByAddress[start] = block;
+            for (int i = start; i < address && i < blockOf.length; i += 2) {
+                blockOf[i] = block;
+            }
+        }
+
+        blocks = list.toArray(new BasicBlock[0]);
+    }
+
+    /**
+     * @return True if a whole instruction fits in the memory at the address.
+     */
+    private static boolean fits(int address) {
+        return address >= 0 && address < 0xFFF;
+    }
+
+    /**
+     * @return True if the address is inside of the memory (0 to 0xFFF).
+     */
+    private boolean inMemory(int address) {
+        return address >= 0 && address < map.length;
+    }
+
+    /**
+     * @param address Address in the memory.
+     * @return Type of the byte: UNKNOWN, CODE, OPERAND or DATA. UNKNOWN outside of the memory.
+     */
+    public byte getType(int address) {
+        return inMemory(address) ? map[address] : UNKNOWN;
+    }
+
+    /**
+     * @param address Address in the memory.
+     * @return True if an instruction reachable from the entry point begins at the address.
+     */
+    public boolean isCode(int address) {
+        return inMemory(address) && map[address] == CODE;
+    }
+
+    /**
+     * @param address Address in the memory.
+     * @return True if a subroutine (target of 2nnn) begins at the address.
+     */
+    public boolean isSubroutine(int address) {
+        return inMemory(address) && subroutines[address];
+    }
+
+    /**
+     * @return All the basic blocks, sorted by their start address. The array is shared, it mustn't be modified.
+     */
+    public BasicBlock[] getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * @param address Address of the block's first instruction.
+     * @return Block beginning at the address, null if no block begins there or it's outside of the memory.
+     */
+    public BasicBlock getBlockAt(int address) {
+        return inMemory(address) ? blocksByAddress[address] : null;
+    }
+
+    /**
+     * @param address Address of an instruction.
+     * @return Block containing the instruction, null if the address isn't code or it's outside of the memory.
+     */
+    public BasicBlock getBlockContaining(int address) {
+        return inMemory(address) ? blockOf[address] : null;
+    }
+
+    /**
+     * @return Address the analysis started at.
+     */
+    public int getEntry() {
+        return entry;
+    }
+}
@@ -0,0 +1,172 @@
+package chip8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Code coverage of a run - which instructions were executed and which directions of the skips were taken.
+ * Everything is kept in 4096-bit bitmaps, one bit per address, so recording an instruction is a couple of bit
+ * operations, and the coverage of many runs (e.g. parallel fuzzing) is merged by ORing the bitmaps.
+ * The skips are 3xkk, 4xkk, 5xy0, 9xy0, Ex9E and ExA1 - a skip is taken when the next instruction is skipped.
+ */
+public class Coverage {
+
+    /**
+     * Magic number at the beginning of the coverage file, "C8CV".
+     */
+    public static final int MAGIC = 0x43384356;
+
+    /**
+     * Whether the instruction is a skip, indexed by the micro-op number.
+     */
+    private static final boolean[] SKIPS = new boolean[Decoder.COUNT];
+
+    static {
+        SKIPS[Decoder.SE_VX_KK] = true;
+        SKIPS[Decoder.SNE_VX_KK] = true;
+        SKIPS[Decoder.SE_VX_VY] = true;
+        SKIPS[Decoder.SNE_VX_VY] = true;
+        SKIPS[Decoder.SKP] = true;
+        SKIPS[Decoder.SKNP] = true;
+    }
+
+    /**
+     * Addresses of the executed instructions.
+     */
+    private final long[] executed = new long[4096 / 64];
+
+    /**
+     * Addresses of the skips that skipped the next instruction.
+     */
+    private final long[] taken = new long[4096 / 64];
+
+    /**
+     * Addresses of the skips that didn't skip the next instruction.
+     */
+    private final long[] notTaken = new long[4096 / 64];
+
+    /**
+     * Records an executed instruction. Called by the CPU after each instruction.
+     * @param PC Address of the instruction.
+     * @param op Decoded instruction (see Decoder).
+     * @param nextPC PC after the instruction.
+     */
+    public void record(int PC, int op, int nextPC) {
+        PC &= Memory.ADDRESS_MASK;
+        long bit = 1L << PC;
+        executed[PC >> 6] |= bit;
+
+        if (SKIPS[op >>> 24]) {
+            if (((nextPC - PC) & Memory.ADDRESS_MASK) == 4) {
+                taken[PC >> 6] |= bit;
+            } else {
+                notTaken[PC >> 6] |= bit;
+            }
+        }
+    }
+
+    /**
+     * @param number Micro-op number of the instruction (see Decoder).
+     * @return True if the instruction is a skip.
+     */
+    public static boolean isSkip(int number) {
+        return SKIPS[number];
+    }
+
+    /**
+     * @param address Address of the instruction.
+     * @return True if the instruction at the address was executed.
+     */
+    public boolean isExecuted(int address) {
+        return get(executed, address);
+    }
+
+    /**
+     * @param address Address of the skip.
+     * @return True if the skip at the address skipped the next instruction at least once.
+     */
+    public boolean isTaken(int address) {
+        return get(taken, address);
+    }
+
+    /**
+     * @param address Address of the skip.
+     * @return True if the skip at the address didn't skip the next instruction at least once.
+     */
+    public boolean isNotTaken(int address) {
+        return get(notTaken, address);
+    }
+
+    /**
+     * @return True if the address's bit is set in the bitmap.
+     */
+    private static boolean get(long[] bitmap, int address) {
+        address &= Memory.ADDRESS_MASK;
+        return (bitmap[address >> 6] & (1L << address)) != 0;
+    }
+
+    /**
+     * @return Number of the executed addresses.
+     */
+    public int getExecutedCount() {
+        int count = 0;
+        for (long bits : executed) {
+            count += Long.bitCount(bits);
+        }
+        return count;
+    }
+
+    /**
+     * Adds the coverage of another run to this one.
+     * @param other Coverage of the other run.
+     */
+    public void merge(Coverage other) {
+        for (int i = 0; i < executed.length; i++) {
+            executed[i] |= other.executed[i];
+            taken[i] |= other.taken[i];
+            notTaken[i] |= other.notTaken[i];
+        }
+    }
+
+    /**
+     * Writes the coverage to a file - the magic number and the three bitmaps.
+     * @param path Path to the file.
+     * @throws IOException If the file can't be written.
+     */
+    public void write(String path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            for (long[] bitmap : new long[][] {executed, taken, notTaken}) {
+                for (long bits : bitmap) {
+                    out.writeLong(bits);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the coverage written by write().
+     * @param path Path to the file.
+     * @return The coverage.
+     * @throws IOException If the file can't be read or isn't a coverage file.
+     */
+    public static Coverage read(String path) throws IOException {
+        Coverage coverage = new Coverage();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(path + " isn't a chip-8 coverage file");
+            }
+            for (long[] bitmap : new long[][] {coverage.executed, coverage.taken, coverage.notTaken}) {
+                for (int i = 0; i < bitmap.length; i++) {
+                    bitmap[i] = in.readLong();
+                }
+            }
+        }
+        return coverage;
+    }
+}
@@ -0,0 +1,188 @@
+package chip8;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Tool turning the coverage of one or more runs of a ROM into an annotated listing and an lcov tracefile.
+ * The listing follows the ControlFlowGraph - the instructions reachable from 0x200 (and the executed ones,
+ * in case the graph couldn't follow an indirect jump) are disassembled, everything else is listed as data.
+ * In the lcov tracefile the lines are the instructions' addresses and every skip has two branches -
+ * 0 where the next instruction is executed, 1 where it's skipped.
+ * Usage: CoverageReport (ROM PATH) (OUTPUT PREFIX) (COVERAGE FILE)...
+ */
+public class CoverageReport {
+
+    /**
+     * Maximal number of the data bytes listed on a single line.
+     */
+    private static final int DATA_PER_LINE = 8;
+
+    /**
+     * Memory holding the ROM.
+     */
+    private final Memory memory;
+
+    /**
+     * Address after the ROM's last byte.
+     */
+    private final int end;
+
+    /**
+     * Merged coverage of the runs.
+     */
+    private final Coverage coverage;
+
+    /**
+     * Control-flow graph of the ROM, telling the code from the data.
+     */
+    private final ControlFlowGraph graph;
+
+    /**
+     * Disassembler of the ROM.
+     */
+    private final Disassembler disassembler;
+
+    /**
+     * Main constructor.
+     * @param memory Memory holding the ROM at 0x200.
+     * @param romSize Size of the ROM in bytes.
+     * @param coverage Coverage of the runs.
+     */
+    public CoverageReport(Memory memory, int romSize, Coverage coverage) {
+        this.memory = memory;
+        this.end = Math.min(0x200 + romSize, 0x1000);
+        this.coverage = coverage;
+        this.graph = ControlFlowGraph.analyze(memory);
+        this.disassembler = new Disassembler(memory);
+    }
+
+    /**
+     * @return True if an instruction is listed at the address.
+     */
+    private boolean isInstruction(int address) {
+        return address < 0xFFF && (graph.isCode(address) || coverage.isExecuted(address));
+    }
+
+    /**
+     * Writes the annotated listing - a line per instruction, marked with "+" if it was executed and "-" if not,
+     * with the skips' directions, and the data bytes in between.
+     * @param out Appendable to write the listing to.
+     * @throws IOException If the Appendable fails.
+     */
+    public void writeListing(Appendable out) throws IOException {
+        int address = 0x200;
+        while (address < end) {
+            if (isInstruction(address)) {
+                out.append(coverage.isExecuted(address) ? "+ " : "- ");
+                disassembler.disassemble(address, out);
+                if (Coverage.isSkip(Decoder.number(instruction(address)))) {
+                    out.append(skipNote(address));
+                }
+                out.append('\n');
+                address += 2;
+            } else {
+                out.append(String.format("  %03X DB", address));
+                for (int i = 0; i < DATA_PER_LINE && address < end && !isInstruction(address); i++, address++) {
+                    out.append(String.format(" %02X", memory.peek(address) & 0xFF));
+                }
+                out.append('\n');
+            }
+        }
+    }
+
+    /**
+     * @return Note with the directions the skip took.
+     */
+    private String skipNote(int address) {
+        boolean taken = coverage.isTaken(address);
+        boolean notTaken = coverage.isNotTaken(address);
+        if (taken && notTaken) {
+            return "  ; skip: both";
+        } else if (taken) {
+            return "  ; skip: always taken";
+        } else if (notTaken) {
+            return "  ; skip: never taken";
+        }
+        return "  ; skip: not executed";
+    }
+
+    /**
+     * @return Decoded instruction at the address.
+     */
+    private int instruction(int address) {
+        return Decoder.decode(((memory.peek(address) & 0xFF) << 8) | (memory.peek(address + 1) & 0xFF));
+    }
+
+    /**
+     * Writes the lcov tracefile - a DA line per instruction and two BRDA lines per skip, with the summaries.
+     * @param out Appendable to write the tracefile to.
+     * @param source Name of the ROM used as the source file.
+     * @throws IOException If the Appendable fails.
+     */
+    public void writeLcov(Appendable out, String source) throws IOException {
+        int lines = 0;
+        int linesHit = 0;
+        int branches = 0;
+        int branchesHit = 0;
+        StringBuilder branchLines = new StringBuilder();
+
+        //the tracefile's lines always end with '\n', on every platform
+        out.append("TN:\nSF:").append(source).append('\n');
+        for (int address = 0x200; address < end; address++) {
+            if (!isInstruction(address)) {
+                continue;
+            }
+            boolean executed = coverage.isExecuted(address);
+            lines++;
+            linesHit += executed ? 1 : 0;
+            out.append(String.format("DA:%d,%d\n", address, executed ? 1 : 0));
+
+            if (Coverage.isSkip(Decoder.number(instruction(address)))) {
+                boolean notTaken = coverage.isNotTaken(address);
+                boolean taken = coverage.isTaken(address);
+                branches += 2;
+                branchesHit += (notTaken ? 1 : 0) + (taken ? 1 : 0);
+                branchLines.append(String.format("BRDA:%d,0,0,%s\n", address, executed ? (notTaken ? "1" : "0") : "-"));
+                branchLines.append(String.format("BRDA:%d,0,1,%s\n", address, executed ? (taken ? "1" : "0") : "-"));
+            }
+            address++;
+        }
+        out.append(branchLines);
+        out.append(String.format("BRF:%d\nBRH:%d\nLF:%d\nLH:%d\nend_of_record\n",
+                branches, branchesHit, lines, linesHit));
+    }
+
+    /**
+     * Merges the coverage files of a ROM and writes the listing (PREFIX.lst) and the lcov tracefile (PREFIX.info).
+     * @param args Path to the ROM, prefix of the output files and the coverage files.
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Usage: CoverageReport (ROM PATH) (OUTPUT PREFIX) (COVERAGE FILE)...");
+            return;
+        }
+
+        try {
+            Memory memory = new Memory();
+            int size = memory.loadFile(args[0]);
+
+            Coverage coverage = new Coverage();
+            for (int i = 2; i < args.length; i++) {
+                coverage.merge(Coverage.read(args[i]));
+            }
+
+            CoverageReport report = new CoverageReport(memory, Math.max(size, 0), coverage);
+            try (Writer out = new BufferedWriter(new FileWriter(args[1] + ".lst"))) {
+                report.writeListing(out);
+            }
+            try (Writer out = new BufferedWriter(new FileWriter(args[1] + ".info"))) {
+                report.writeLcov(out, args[0]);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package chip8;
+
+/**
+ * Copy of the registry taken by the emulation at the end of a frame, handed over to the debug view by DebugTelemetry.
+ * The snapshots are recycled, so the fields are only valid while the snapshot is owned by the reader.
+ */
+public class DebugSnapshot {
+
+    /**
+     * 16 8-bit registers from V0 to VX.
+     */
+    public final byte[] VReg = new byte[16];
+
+    /**
+     * The I register.
+     */
+    public short IReg;
+
+    /**
+     * Delay timer.
+     */
+    public byte DT;
+
+    /**
+     * Sound timer.
+     */
+    public byte ST;
+
+    /**
+     * Program counter.
+     */
+    public short PC;
+
+    /**
+     * Stack pointer.
+     */
+    public byte SP;
+
+    /**
+     * CPU's cycle counter at the time of the snapshot.
+     */
+    public long cycles;
+
+    /**
+     * Copies the registry into the snapshot.
+     * @param registry Registry to copy.
+     * @param cycles CPU's cycle counter.
+     */
+    public void copy(Registry registry, long cycles) {
+        System.arraycopy(registry.VReg, 0, VReg, 0, VReg.length);
+        IReg = registry.IReg;
+        DT = registry.DT;
+        ST = registry.ST;
+        PC = registry.PC;
+        SP = registry.SP;
+        this.cycles = cycles;
+    }
+}
@@ -0,0 +1,69 @@
+package chip8;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Single-slot mailbox passing the registry's snapshots from the emulation to the debug view.
+ * The emulation publishes a snapshot every frame and never waits - an unread snapshot is simply replaced
+ * by the newer one. The debug view takes the latest snapshot at its own rate and gives it back when it's done,
+ * so the two snapshot objects are reused and nothing is allocated per frame.
+ */
+public class DebugTelemetry {
+
+    /**
+     * Latest published snapshot, null if it has been taken already.
+     */
+    private final AtomicReference<DebugSnapshot> mailbox = new AtomicReference<>();
+
+    /**
+     * Snapshot given back by the reader, reused by the next publish.
+     */
+    private final AtomicReference<DebugSnapshot> free = new AtomicReference<>();
+
+    /**
+     * Number of the published snapshots.
+     */
+    private volatile long published;
+
+    /**
+     * Publishes a snapshot of the registry, replacing the unread one. Called by the emulation thread.
+     * @param registry Registry to copy.
+     * @param cycles CPU's cycle counter.
+     */
+    public void publish(Registry registry, long cycles) {
+        DebugSnapshot snapshot = free.getAndSet(null);
+        if (snapshot == null) {
+            snapshot = new DebugSnapshot();
+        }
+        snapshot.copy(registry, cycles);
+
+        DebugSnapshot unread = mailbox.getAndSet(snapshot);
+        if (unread != null) {
+            free.set(unread);
+        }
+        published++;
+    }
+
+    /**
+     * Takes the latest snapshot out of the mailbox. The snapshot should be given back by recycle() after use.
+     * @return The latest snapshot, null if nothing was published since the last take.
+     */
+    public DebugSnapshot take() {
+        return mailbox.getAndSet(null);
+    }
+
+    /**
+     * Gives a taken snapshot back, so the emulation can reuse it.
+     * @param snapshot Snapshot returned by take().
+     */
+    public void recycle(DebugSnapshot snapshot) {
+        free.set(snapshot);
+    }
+
+    /**
+     * @return Number of the published snapshots.
+     */
+    public long getPublishedCount() {
+        return published;
+    }
+}
@@ -2,18 +2,60 @@ package chip8;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.Arrays;
 
 /**
  * Class creating a Swing GUI window of a simple chip-8's real time internal viewer.
  * Allows to check chip-8's registers, timers, pointers' values
  * along with currently executed, disassembled, instructions.
+ * The view never reads the registry directly - the emulation publishes snapshots to the telemetry mailbox
+ * and a Swing timer pulls the latest one on the EDT at most REFRESH_RATE times per second,
+ * so a slow window can't hold up the emulation or its timers.
+ * The buttons below the view pause, step and resume the machine and toggle the breakpoints through the debugger.
  */
 public class DebugViewGUI {
 
     /**
-     * Reference to the registry.
+     * Maximal number of the view's updates per second.
      */
-    private Registry registry;
+    public static final int REFRESH_RATE = 30;
+
+    /**
+     * Mailbox the registry's snapshots are taken from.
+     */
+    private DebugTelemetry telemetry;
+
+    /**
+     * Debugger controlled by the view's buttons.
+     */
+    private Debugger debugger;
+
+    /**
+     * Label showing whether the machine runs or why it's paused.
+     */
+    private JLabel statusLabel;
+
+    /**
+     * Text field with the hexadecimal address of the breakpoint to toggle.
+     */
+    private JTextField breakpointField;
+
+    /**
+     * Reason of the pause shown in the status, null while the machine runs.
+     */
+    private BreakReason shownReason;
+
+    /**
+     * Whether the instruction fields currently show a breakpoint.
+     */
+    private boolean[] shownBreakpoints;
+
+    /**
+     * Swing timer pulling the snapshots on the EDT.
+     */
+    private Timer refreshTimer;
 
     /**
      * Reference to the disassembler.
@@ -41,21 +83,39 @@ public class DebugViewGUI {
      */
     private JTextField[] instrTextFields;
 
+    /**
+     * Values of the registers currently shown in regTextFields, so only the changed fields are updated.
+     */
+    private int[] shownRegisters;
+
+    /**
+     * Lines currently shown in instrTextFields. The disassembler returns the same cached String for an unchanged
+     * instruction, so the lines are compared by reference.
+     */
+    private String[] shownInstructions;
+
     /**
      * Main constructor. Initializes the JTextField arrays.
-     * @param registry Reference to the registry.
+     * @param telemetry Mailbox the registry's snapshots are taken from.
+     * @param debugger Debugger controlled by the view.
      * @param disassembler Reference to the disassembler.
      */
-    public DebugViewGUI(Registry registry, Disassembler disassembler) {
-        this.registry = registry;
+    public DebugViewGUI(DebugTelemetry telemetry, Debugger debugger, Disassembler disassembler) {
+        this.telemetry = telemetry;
+        this.debugger = debugger;
         this.disassembler = disassembler;
 
         regTextFields = new JTextField[21];
         instrTextFields = new JTextField[21];
+
+        shownRegisters = new int[21];
+        Arrays.fill(shownRegisters, Integer.MIN_VALUE);
+        shownInstructions = new String[21];
+        shownBreakpoints = new boolean[21];
     }
 
     /**
-     * Creates a Swing window, fills the JTextFields and connects them to the JPanel.
+     * Creates a Swing window, fills the JTextFields, connects them to the JPanel and starts the refresh timer.
      */
     public void createGUI() {
         frame = new JFrame("Debug");
@@ -67,15 +127,13 @@ public class DebugViewGUI {
         textPanel.setLayout(new GridLayout(21, 2));
 
         frame.add(textPanel);
+        frame.add(createControlPanel(), BorderLayout.SOUTH);
 
         for (int i = 0; i < regTextFields.length; i++) {
             regTextFields[i] = new JTextField();
             instrTextFields[i] = new JTextField();
         }
 
-        updateRegisters();
-        updateInstructions();
-
         for (int i = 0; i < regTextFields.length; i++) {
             textPanel.add(regTextFields[i]);
             textPanel.add(instrTextFields[i]);
@@ -83,37 +141,157 @@ public class DebugViewGUI {
 
         instrTextFields[10].setBackground(Color.LIGHT_GRAY);
 
-        frame.setSize(new Dimension(400, 500));
+        frame.setSize(new Dimension(400, 560));
         frame.setVisible(true);
+
+        refreshTimer = new Timer(1000 / REFRESH_RATE, e -> refresh());
+        refreshTimer.start();
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                refreshTimer.stop();
+            }
+        });
     }
 
     /**
-     * Updates the values of the register JTextFields using the values from the register.
+     * Creates the panel with the debugger's controls.
+     * @return The panel.
      */
-    public void updateRegisters() {
+    private JPanel createControlPanel() {
+        JPanel panel = new JPanel(new GridLayout(2, 3));
+
+        JButton pauseButton = new JButton("Pause");
+        pauseButton.addActionListener(e -> debugger.pause());
+        JButton stepButton = new JButton("Step");
+        stepButton.addActionListener(e -> debugger.step());
+        JButton resumeButton = new JButton("Resume");
+        resumeButton.addActionListener(e -> debugger.resume());
+
+        breakpointField = new JTextField("200");
+        JButton breakpointButton = new JButton("Breakpoint");
+        breakpointButton.addActionListener(e -> toggleBreakpoint());
+        breakpointField.addActionListener(e -> toggleBreakpoint());
+
+        statusLabel = new JLabel("Running");
+
+        panel.add(pauseButton);
+        panel.add(stepButton);
+        panel.add(resumeButton);
+        panel.add(breakpointField);
+        panel.add(breakpointButton);
+        panel.add(statusLabel);
+        return panel;
+    }
+
+    /**
+     * Toggles the breakpoint at the hexadecimal address typed in the breakpoint field.
+     */
+    private void toggleBreakpoint() {
+        try {
+            debugger.toggleBreakpoint(Integer.parseInt(breakpointField.getText().trim(), 16));
+        } catch (NumberFormatException e) {
+            statusLabel.setText("Invalid address");
+        }
+    }
+
+    /**
+     * Takes the latest snapshot from the mailbox and shows it. Does nothing if nothing new was published.
+     * Called on the EDT by the refresh timer.
+     */
+    private void refresh() {
+        DebugSnapshot snapshot = telemetry.take();
+        if (snapshot == null) {
+            return;
+        }
+        updateRegisters(snapshot);
+        updateInstructions(snapshot.PC);
+        telemetry.recycle(snapshot);
+        updateStatus();
+    }
+
+    /**
+     * Updates the status label, only when the machine was paused, stepped or resumed.
+     */
+    private void updateStatus() {
+        BreakReason reason = debugger.isPaused() ? debugger.getBreakReason() : null;
+        if (reason == shownReason) {
+            return;
+        }
+        shownReason = reason;
+        if (reason == BreakReason.STEP) {
+            statusLabel.setText("Stepping");
+        } else if (reason != null) {
+            statusLabel.setText(String.format("%s at %03X", reason, debugger.getBreakAddress()));
+        } else {
+            statusLabel.setText("Running");
+        }
+    }
+
+    /**
+     * Updates the values of the register JTextFields using the values from the snapshot.
+     * Only the fields whose values changed are formatted and updated.
+     * @param registry Snapshot of the registry.
+     */
+    private void updateRegisters(DebugSnapshot registry) {
         for (int i = 0; i < 16; i++) {
-            regTextFields[i].setText(String.format("V%01X:%d", i, registry.VReg[i]));
+            if (changed(i, registry.VReg[i])) {
+                regTextFields[i].setText(String.format("V%01X:%d", i, registry.VReg[i]));
+            }
+        }
+        if (changed(16, registry.IReg)) {
+            regTextFields[16].setText(String.format("IReg:%d", registry.IReg));
+        }
+        if (changed(17, registry.DT)) {
+            regTextFields[17].setText(String.format("DT:%d", registry.DT));
+        }
+        if (changed(18, registry.ST)) {
+            regTextFields[18].setText(String.format("ST:%d", registry.ST));
         }
-        regTextFields[16].setText(String.format("IReg:%d", registry.IReg));
-        regTextFields[17].setText(String.format("DT:%d", registry.DT));
-        regTextFields[18].setText(String.format("ST:%d", registry.ST));
-        regTextFields[19].setText(String.format("PC:%d", registry.PC));
-        regTextFields[20].setText(String.format("SP:%d", registry.SP));
+        if (changed(19, registry.PC)) {
+            regTextFields[19].setText(String.format("PC:%d", registry.PC));
+        }
+        if (changed(20, registry.SP)) {
+            regTextFields[20].setText(String.format("SP:%d", registry.SP));
+        }
+    }
+
+    /**
+     * Checks whether the shown value of a register changed and remembers the new one.
+     * @param field Index of the register's field.
+     * @param value Current value of the register.
+     * @return True if the field has to be updated.
+     */
+    private boolean changed(int field, int value) {
+        if (shownRegisters[field] == value) {
+            return false;
+        }
+        shownRegisters[field] = value;
+        return true;
     }
 
     /**
      * Updates the values of the instruction JTextFields using the currently used instruction
      * and the instructions in the range of 10.
+     * The instructions are 2 bytes long, so the listing steps by 2 from the PC to stay aligned with it,
+     * and the current instruction is the highlighted middle field.
+     * The lines come from the disassembler's cache, only the changed fields are updated.
+     * @param PC Address of the currently executed instruction.
      */
-    public void updateInstructions() {
-        int index = registry.PC;
+    private void updateInstructions(int PC) {
+        int index = PC - instrTextFields.length / 2 * 2;
         for (int i = 0; i < instrTextFields.length; i++) {
-            if (memIndexAllowed(index)) {
-                instrTextFields[i].setText(disassembler.disassemble((short) index));
-            } else {
-                instrTextFields[i].setText("");
+            String text = memIndexAllowed(index) ? disassembler.disassemble((short) index) : "";
+            if (text != shownInstructions[i]) {
+                shownInstructions[i] = text;
+                instrTextFields[i].setText(text);
+            }
+            boolean breakpoint = memIndexAllowed(index) && debugger.hasBreakpoint(index);
+            if (breakpoint != shownBreakpoints[i]) {
+                shownBreakpoints[i] = breakpoint;
+                instrTextFields[i].setForeground(breakpoint ? Color.RED : Color.BLACK);
             }
-            index++;
+            index += 2;
         }
     }
 
@@ -123,6 +301,6 @@ public class DebugViewGUI {
      * @return True if index isn't exceeding the memory's size, otherwise false.
      */
     private boolean memIndexAllowed(int memIndex) {
-        return memIndex > 0 && memIndex < 0xFFF;
+        return memIndex >= 0 && memIndex < 0xFFF;
     }
 }
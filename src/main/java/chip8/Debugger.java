@@ -0,0 +1,400 @@
+package chip8;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Debugger built into the CPU - breakpoints, memory watchpoints, conditional breaks, pausing and stepping.
+ * The CPU checks a single volatile flag before each instruction and calls the debugger only if it's armed
+ * (something is set or the machine is paused), so the debugger costs nothing while it isn't used.
+ * The recompiled blocks bypass the checks, so the emulation falls back to the interpreter while the debugger is armed.
+ * All the instructions that access the data (Dxyn, Fx33, Fx55, Fx65) are checked before they're executed,
+ * so a watchpoint stops the machine with the accessing instruction at the PC.
+ * The breakpoints and the control methods may be called from any thread (the debug window, the API),
+ * the checks run on the emulation thread.
+ */
+public class Debugger {
+
+    //types of the watchpoints, may be combined
+    public static final int WATCH_READ = 1;
+    public static final int WATCH_WRITE = 2;
+
+    /**
+     * Breakpoints - one bit per address of the memory.
+     */
+    private final long[] breakpoints = new long[4096 / 64];
+
+    /**
+     * Watchpoints - WATCH_READ and WATCH_WRITE bits for every address of the memory.
+     */
+    private final byte[] watchpoints = new byte[4096];
+
+    /**
+     * Conditions on the registers, replaced as a whole when one is added or removed.
+     */
+    private volatile Condition[] conditions = new Condition[0];
+
+    /**
+     * Number of the set breakpoints.
+     */
+    private int breakpointCount;
+
+    /**
+     * Number of the watched addresses.
+     */
+    private int watchpointCount;
+
+    /**
+     * Whether the CPU has to call the debugger before each instruction.
+     */
+    private volatile boolean armed;
+
+    /**
+     * Whether the machine is paused.
+     */
+    private volatile boolean paused;
+
+    /**
+     * Whether a pause was requested and the machine should stop before the next instruction.
+     */
+    private volatile boolean pauseRequested;
+
+    /**
+     * Address the machine was resumed at, -1 if none. The checks are skipped until the PC leaves the address,
+     * so an instruction executed again in place (Fx0A waiting for a key) doesn't hit its breakpoint again.
+     */
+    private volatile int resumedAt = -1;
+
+    /**
+     * Number of the instructions to execute while paused.
+     */
+    private final AtomicInteger pendingSteps = new AtomicInteger();
+
+    /**
+     * Reason of the last pause, null if the machine never paused.
+     */
+    private volatile BreakReason breakReason;
+
+    /**
+     * Address of the instruction the machine paused at.
+     */
+    private volatile int breakAddress;
+
+    /**
+     * Called by the CPU before each instruction while the debugger is armed. Runs on the emulation thread.
+     * @param registry Registry of the machine.
+     * @param op Decoded instruction at the PC (see Decoder).
+     * @return True if the instruction mustn't be executed, because the machine is paused.
+     */
+    public boolean shouldBreak(Registry registry, int op) {
+        int PC = registry.PC & Memory.ADDRESS_MASK;
+
+        if (paused) {
+            if (pendingSteps.get() == 0) {
+                return true;
+            }
+            //one instruction is executed, the machine stays paused
+            pendingSteps.decrementAndGet();
+            breakReason = BreakReason.STEP;
+            return false;
+        }
+
+        if (pauseRequested) {
+            return stop(BreakReason.PAUSE, PC);
+        }
+
+        if (resumedAt >= 0) {
+            if (PC == resumedAt) {
+                return false;
+            }
+            resumedAt = -1;
+        }
+
+        if ((breakpoints[PC >> 6] & (1L << PC)) != 0) {
+            return stop(BreakReason.BREAKPOINT, PC);
+        }
+
+        if (watchpointCount > 0) {
+            BreakReason watch = checkWatchpoints(registry, op);
+            if (watch != null) {
+                return stop(watch, PC);
+            }
+        }
+
+        //a condition stops the machine when it becomes true, so it can be resumed while it still holds
+        for (Condition condition : conditions) {
+            boolean holds = condition.predicate.test(registry);
+            boolean became = holds && !condition.held;
+            condition.held = holds;
+            if (became) {
+                return stop(BreakReason.CONDITION, PC);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks the memory cells the instruction is going to access.
+     * @return WATCH_READ or WATCH_WRITE if a watched cell is accessed, otherwise null.
+     */
+    private BreakReason checkWatchpoints(Registry registry, int op) {
+        int x = (op >> 8) & 0xF;
+
+        switch (Decoder.number(op)) {
+            case Decoder.DRW:
+                return watched(registry.IReg, op & 0xF, WATCH_READ) ? BreakReason.WATCH_READ : null;
+            case Decoder.LD_B_VX:
+                return watched(registry.IReg, 3, WATCH_WRITE) ? BreakReason.WATCH_WRITE : null;
+            case Decoder.LD_I_VX:
+                return watched(registry.IReg, x + 1, WATCH_WRITE) ? BreakReason.WATCH_WRITE : null;
+            case Decoder.LD_VX_I:
+                return watched(registry.IReg, x + 1, WATCH_READ) ? BreakReason.WATCH_READ : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return True if any of the cells in the range is watched for the given access.
+     */
+    private boolean watched(int address, int length, int type) {
+        for (int i = 0; i < length; i++) {
+            if ((watchpoints[(address + i) & Memory.ADDRESS_MASK] & type) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Pauses the machine before the instruction at the PC.
+     * @return Always true, the instruction isn't executed.
+     */
+    private boolean stop(BreakReason reason, int PC) {
+        breakReason = reason;
+        breakAddress = PC;
+        pauseRequested = false;
+        paused = true;
+        updateArmed();
+        return true;
+    }
+
+    /**
+     * Recomputes whether the CPU has to call the debugger.
+     */
+    private synchronized void updateArmed() {
+        armed = paused || pauseRequested || breakpointCount > 0 || watchpointCount > 0 || conditions.length > 0;
+    }
+
+    /**
+     * @return True if the CPU has to call the debugger before each instruction.
+     */
+    public boolean isArmed() {
+        return armed;
+    }
+
+    /**
+     * Sets a breakpoint - the machine pauses before executing the instruction at the address.
+     * @param address Address of the instruction.
+     */
+    public synchronized void setBreakpoint(int address) {
+        address &= Memory.ADDRESS_MASK;
+        if (!hasBreakpoint(address)) {
+            breakpoints[address >> 6] |= 1L << address;
+            breakpointCount++;
+        }
+        updateArmed();
+    }
+
+    /**
+     * Removes the breakpoint at the address, if there's any.
+     * @param address Address of the instruction.
+     */
+    public synchronized void clearBreakpoint(int address) {
+        address &= Memory.ADDRESS_MASK;
+        if (hasBreakpoint(address)) {
+            breakpoints[address >> 6] &= ~(1L << address);
+            breakpointCount--;
+        }
+        updateArmed();
+    }
+
+    /**
+     * Sets the breakpoint if there's none at the address, otherwise removes it.
+     * @param address Address of the instruction.
+     */
+    public synchronized void toggleBreakpoint(int address) {
+        if (hasBreakpoint(address & Memory.ADDRESS_MASK)) {
+            clearBreakpoint(address);
+        } else {
+            setBreakpoint(address);
+        }
+    }
+
+    /**
+     * @param address Address of the instruction.
+     * @return True if there's a breakpoint at the address.
+     */
+    public boolean hasBreakpoint(int address) {
+        address &= Memory.ADDRESS_MASK;
+        return (breakpoints[address >> 6] & (1L << address)) != 0;
+    }
+
+    /**
+     * Watches a range of the memory - the machine pauses before an instruction accessing it.
+     * @param from First watched address.
+     * @param to Address after the last watched one.
+     * @param type WATCH_READ, WATCH_WRITE or both.
+     */
+    public synchronized void addWatchpoint(int from, int to, int type) {
+        for (int address = from; address < to; address++) {
+            int i = address & Memory.ADDRESS_MASK;
+            if (watchpoints[i] == 0 && type != 0) {
+                watchpointCount++;
+            }
+            watchpoints[i] |= type;
+        }
+        updateArmed();
+    }
+
+    /**
+     * Stops watching a range of the memory.
+     * @param from First address.
+     * @param to Address after the last one.
+     */
+    public synchronized void removeWatchpoint(int from, int to) {
+        for (int address = from; address < to; address++) {
+            int i = address & Memory.ADDRESS_MASK;
+            if (watchpoints[i] != 0) {
+                watchpointCount--;
+            }
+            watchpoints[i] = 0;
+        }
+        updateArmed();
+    }
+
+    /**
+     * Adds a condition - the machine pauses before an instruction when the condition becomes true.
+     * @param predicate Condition on the registers, evaluated on the emulation thread.
+     */
+    public synchronized void addCondition(Predicate<Registry> predicate) {
+        Condition[] updated = Arrays.copyOf(conditions, conditions.length + 1);
+        updated[conditions.length] = new Condition(predicate);
+        conditions = updated;
+        updateArmed();
+    }
+
+    /**
+     * Adds a condition pausing the machine when a V register gets the value.
+     * @param register Number of the register (0x0 - 0xF).
+     * @param value Value of the register.
+     * @return The added condition, to be passed to removeCondition().
+     */
+    public Predicate<Registry> addRegisterCondition(int register, int value) {
+        Predicate<Registry> predicate = registry -> (registry.VReg[register] & 0xFF) == (value & 0xFF);
+        addCondition(predicate);
+        return predicate;
+    }
+
+    /**
+     * Removes a condition.
+     * @param predicate Condition passed to addCondition().
+     */
+    public synchronized void removeCondition(Predicate<Registry> predicate) {
+        Condition[] updated = Arrays.stream(conditions)
+                .filter(condition -> condition.predicate != predicate)
+                .toArray(Condition[]::new);
+        conditions = updated;
+        updateArmed();
+    }
+
+    /**
+     * Removes all the breakpoints, watchpoints and conditions.
+     */
+    public synchronized void clearAll() {
+        Arrays.fill(breakpoints, 0);
+        Arrays.fill(watchpoints, (byte) 0);
+        breakpointCount = 0;
+        watchpointCount = 0;
+        conditions = new Condition[0];
+        updateArmed();
+    }
+
+    /**
+     * Pauses the machine before the next instruction.
+     */
+    public void pause() {
+        pauseRequested = true;
+        updateArmed();
+    }
+
+    /**
+     * Executes a single instruction of the paused machine. Pauses the running one.
+     */
+    public void step() {
+        if (paused) {
+            pendingSteps.incrementAndGet();
+        } else {
+            pause();
+        }
+    }
+
+    /**
+     * Resumes the paused machine. The instruction it paused at is executed without hitting its breakpoint again,
+     * even if it's executed repeatedly (Fx0A waiting for a key) before the PC moves on.
+     */
+    public void resume() {
+        if (!paused) {
+            pauseRequested = false;
+            updateArmed();
+            return;
+        }
+        pendingSteps.set(0);
+        resumedAt = breakAddress;
+        paused = false;
+        updateArmed();
+    }
+
+    /**
+     * @return True if the machine is paused.
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * @return Reason of the last pause, null if the machine never paused.
+     */
+    public BreakReason getBreakReason() {
+        return breakReason;
+    }
+
+    /**
+     * @return Address of the instruction the machine paused at. Stepping doesn't change it, the PC does.
+     */
+    public int getBreakAddress() {
+        return breakAddress;
+    }
+
+    /**
+     * Condition on the registers, remembering whether it held before the last instruction.
+     */
+    private static class Condition {
+
+        /**
+         * The condition.
+         */
+        final Predicate<Registry> predicate;
+
+        /**
+         * Whether the condition held when it was checked the last time. Only used by the emulation thread.
+         */
+        boolean held;
+
+        Condition(Predicate<Registry> predicate) {
+            this.predicate = predicate;
+        }
+    }
+}
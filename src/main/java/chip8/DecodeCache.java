@@ -0,0 +1,78 @@
+package chip8;
+
+/**
+ * Cache of the decoded instructions (micro-ops, see Decoder), indexed by the instruction's address.
+ * Every instruction is decoded once, the entry is invalidated when one of the instruction's bytes is written to.
+ */
+public class DecodeCache implements MemoryListener {
+
+    /**
+     * Reference to the memory.
+     */
+    private Memory memory;
+
+    /**
+     * Decoded instructions, indexed by the address. 0 if the instruction at the address wasn't decoded yet.
+     */
+    private int[] ops;
+
+    /**
+     * Main constructor. Registers the cache as the memory's listener.
+     * @param memory Reference to the memory.
+     */
+    public DecodeCache(Memory memory) {
+        this.memory = memory;
+        this.ops = new int[4096];
+
+        memory.addListener(this);
+    }
+
+    /**
+     * Gets the decoded instruction at the address, decoding it if necessary.
+     * @param address Address of the instruction.
+     * @return Micro-op of the instruction.
+     */
+    public int get(int address) {
+        //the last byte of the memory can't hold a whole instruction, it's decoded without caching
+        if (address < 0 || address >= 0xFFF) {
+            return decode(address);
+        }
+
+        int op = ops[address];
+        if (op == 0) {
+            op = decode(address);
+            ops[address] = op;
+        }
+        return op;
+    }
+
+    /**
+     * Reads the instruction from the memory and decodes it.
+     * @param address Address of the instruction.
+     * @return Micro-op of the instruction.
+     */
+    private int decode(int address) {
+        // Two bytes of the instruction
+        //the fetch isn't a data access, so it isn't counted by the heatmap
+        //the second byte of an instruction at 0xFFF is still handled by the fault policy
+        byte first = memory.peek(address);
+        byte second = address < Memory.ADDRESS_MASK ? memory.peek(address + 1) : memory.get((short) (address + 1));
+
+        return Decoder.decode(((first & 0xFF) << 8) | (second & 0xFF));
+    }
+
+    /**
+     * Invalidates all the instructions that contain written bytes.
+     * @param address Address of the first written byte.
+     * @param length Number of the written bytes.
+     */
+    @Override
+    public void memoryWritten(int address, int length) {
+        //instruction beginning one byte before the written one contains it as its second byte
+        int from = Math.max(address - 1, 0);
+        int to = Math.min(address + length, ops.length);
+        for (int i = from; i < to; i++) {
+            ops[i] = 0;
+        }
+    }
+}
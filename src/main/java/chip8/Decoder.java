@@ -0,0 +1,197 @@
+package chip8;
+
+/**
+ * Class decoding chip-8's instructions into micro-ops.
+ * A micro-op is an int holding the number of the instruction (one of the 35 chip-8's instructions) in the highest byte
+ * and the raw 2 byte instruction in the lower 16 bits, so the operands are taken out with a single shift and mask:
+ * x = (op >> 8) & 0xF, y = (op >> 4) & 0xF, n = op & 0xF, kk = op & 0xFF, nnn = op & 0xFFF.
+ * Micro-op 0 is never returned by decode(), so it can be used to mark an instruction that wasn't decoded yet.
+ */
+public final class Decoder {
+
+    //numbers of the instructions, dense so the CPU's switch is compiled to a jump table
+    public static final int SYS = 1;
+    public static final int CLS = 2;
+    public static final int RET = 3;
+    public static final int JP = 4;
+    public static final int CALL = 5;
+    public static final int SE_VX_KK = 6;
+    public static final int SNE_VX_KK = 7;
+    public static final int SE_VX_VY = 8;
+    public static final int LD_VX_KK = 9;
+    public static final int ADD_VX_KK = 10;
+    public static final int LD_VX_VY = 11;
+    public static final int OR = 12;
+    public static final int AND = 13;
+    public static final int XOR = 14;
+    public static final int ADD_VX_VY = 15;
+    public static final int SUB = 16;
+    public static final int SHR = 17;
+    public static final int SUBN = 18;
+    public static final int SHL = 19;
+    public static final int SNE_VX_VY = 20;
+    public static final int LD_I = 21;
+    public static final int JP_V0 = 22;
+    public static final int RND = 23;
+    public static final int DRW = 24;
+    public static final int SKP = 25;
+    public static final int SKNP = 26;
+    public static final int LD_VX_DT = 27;
+    public static final int LD_VX_K = 28;
+    public static final int LD_DT_VX = 29;
+    public static final int LD_ST_VX = 30;
+    public static final int ADD_I_VX = 31;
+    public static final int LD_F_VX = 32;
+    public static final int LD_B_VX = 33;
+    public static final int LD_I_VX = 34;
+    public static final int LD_VX_I = 35;
+    public static final int UNKNOWN = 36;
+
+    /**
+     * Number of the different micro-op numbers (including 0 - not decoded).
+     */
+    public static final int COUNT = 37;
+
+    /**
+     * Names of the instructions, indexed by the micro-op number.
+     */
+    public static final String[] NAMES = new String[] {
+            "-", "0nnn SYS", "00E0 CLS", "00EE RET", "1nnn JP", "2nnn CALL",
+            "3xkk SE", "4xkk SNE", "5xy0 SE", "6xkk LD", "7xkk ADD",
+            "8xy0 LD", "8xy1 OR", "8xy2 AND", "8xy3 XOR", "8xy4 ADD", "8xy5 SUB", "8xy6 SHR", "8xy7 SUBN", "8xyE SHL",
+            "9xy0 SNE", "Annn LD I", "Bnnn JP V0", "Cxkk RND", "Dxyn DRW", "Ex9E SKP", "ExA1 SKNP",
+            "Fx07 LD DT", "Fx0A LD K", "Fx15 LD DT", "Fx18 LD ST", "Fx1E ADD I", "Fx29 LD F", "Fx33 LD B",
+            "Fx55 LD [I]", "Fx65 LD [I]", "UNKNOWN"
+    };
+
+    private Decoder() {
+
+    }
+
+    /**
+     * Decodes a single instruction into a micro-op.
+     * @param instr 2 byte instruction.
+     * @return Micro-op - number of the instruction in the highest byte, the instruction in the lower 16 bits.
+     */
+    public static int decode(int instr) {
+        instr = instr & 0xFFFF;
+        return (opNumber(instr) << 24) | instr;
+    }
+
+    /**
+     * @param op Micro-op.
+     * @return Number of the instruction held in the micro-op.
+     */
+    public static int number(int op) {
+        return op >>> 24;
+    }
+
+    /**
+     * Finds the number of the instruction.
+     * @param instr 2 byte instruction.
+     * @return Number of the instruction.
+     */
+    private static int opNumber(int instr) {
+        switch (instr >> 12) {
+            case 0x0:
+                if (instr == 0x00E0) {
+                    return CLS;
+                } else if (instr == 0x00EE) {
+                    return RET;
+                }
+                return SYS;
+
+            case 0x1:
+                return JP;
+
+            case 0x2:
+                return CALL;
+
+            case 0x3:
+                return SE_VX_KK;
+
+            case 0x4:
+                return SNE_VX_KK;
+
+            case 0x5:
+                return SE_VX_VY;
+
+            case 0x6:
+                return LD_VX_KK;
+
+            case 0x7:
+                return ADD_VX_KK;
+
+            case 0x8:
+                switch (instr & 0xF) {
+                    case 0x0:
+                        return LD_VX_VY;
+                    case 0x1:
+                        return OR;
+                    case 0x2:
+                        return AND;
+                    case 0x3:
+                        return XOR;
+                    case 0x4:
+                        return ADD_VX_VY;
+                    case 0x5:
+                        return SUB;
+                    case 0x6:
+                        return SHR;
+                    case 0x7:
+                        return SUBN;
+                    case 0xE:
+                        return SHL;
+                    default:
+                        return UNKNOWN;
+                }
+
+            case 0x9:
+                return SNE_VX_VY;
+
+            case 0xA:
+                return LD_I;
+
+            case 0xB:
+                return JP_V0;
+
+            case 0xC:
+                return RND;
+
+            case 0xD:
+                return DRW;
+
+            case 0xE:
+                if ((instr & 0xFF) == 0x9E) {
+                    return SKP;
+                } else if ((instr & 0xFF) == 0xA1) {
+                    return SKNP;
+                }
+                return UNKNOWN;
+
+            default:
+                switch (instr & 0xFF) {
+                    case 0x07:
+                        return LD_VX_DT;
+                    case 0x0A:
+                        return LD_VX_K;
+                    case 0x15:
+                        return LD_DT_VX;
+                    case 0x18:
+                        return LD_ST_VX;
+                    case 0x1E:
+                        return ADD_I_VX;
+                    case 0x29:
+                        return LD_F_VX;
+                    case 0x33:
+                        return LD_B_VX;
+                    case 0x55:
+                        return LD_I_VX;
+                    case 0x65:
+                        return LD_VX_I;
+                    default:
+                        return UNKNOWN;
+                }
+        }
+    }
+}
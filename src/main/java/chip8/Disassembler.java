@@ -1,37 +1,127 @@
 package chip8;
 
-import java.io.FileOutputStream;
 import java.io.FileWriter;
-import java.io.PrintStream;
+import java.io.IOException;
 
 /**
  * Class representing a simple linear chip-8 program disassembler.
  * It's not very effective as it treats binary data stored in ROM (sprites) as opcodes.
+ * Disassembled lines are cached by the address along with the instruction they were formatted from, so a line
+ * is formatted again only after its instruction changes. Lines are formatted into local buffers, so the disassembler
+ * can be used by several threads at once (e.g. the debug view and the profiler's report), and a caller-supplied
+ * char[] or Appendable is filled without allocating.
  */
 public class Disassembler {
 
+    /**
+     * Maximum length of a single disassembled line.
+     */
+    public static final int MAX_LINE_LENGTH = 32;
+
+    private static final char[] HEX_UPPER = "0123456789ABCDEF".toCharArray();
+    private static final char[] HEX_LOWER = "0123456789abcdef".toCharArray();
+
     /**
      * Reference to the memory.
      */
     Memory memory;
 
+    /**
+     * Disassembled lines indexed by the address, null if not disassembled yet.
+     */
+    private Line[] cache;
+
+    /**
+     * Main constructor.
+     * @param memory Reference to the memory.
+     */
     public Disassembler(Memory memory) {
         this.memory = memory;
+        this.cache = new Line[4096];
     }
 
     /**
      * Disassemble a single instruction at a certain memory adress.
      * This method treats every 2 bytes of memory as an instruction - it can't distinguish data from instructions.
+     * The line is cached, so the same String is returned until the instruction is overwritten.
+     * A line formatted while the instruction was being overwritten is cached with the old instruction,
+     * so it's formatted again by the next call.
      * @param PC Adress of the instruction in the memory.
      * @return String with the disassembled instruction.
      */
     public String disassemble(short PC) {
+        byte first = memory.peek(PC);
+        byte second = memory.peek(PC + 1);
+        if (PC < 0 || PC >= cache.length) {
+            return toString(PC, first, second);
+        }
 
-        StringBuilder stringBuilder = new StringBuilder();
+        short instr = (short) (((first & 0xFF) << 8) | (second & 0xFF));
+        Line cached = cache[PC];
+        if (cached == null || cached.instr != instr) {
+            cached = new Line(instr, toString(PC, first, second));
+            cache[PC] = cached;
+        }
+        return cached.text;
+    }
 
-        // Two bytes of the instruction
-        byte first = memory.get(PC);
-        byte second = memory.get((short) (PC + 1));
+    /**
+     * Disassembles a single instruction into a char array, without allocating.
+     * @param address Adress of the instruction in the memory.
+     * @param out Array to write the line to, needs MAX_LINE_LENGTH characters from the offset.
+     * @param offset Index of the line's first character in the array.
+     * @return Number of the written characters.
+     */
+    public int disassemble(int address, char[] out, int offset) {
+        byte first = memory.peek(address);
+        byte second = memory.peek(address + 1);
+        return format(out, offset, address, first, second) - offset;
+    }
+
+    /**
+     * Disassembles a single instruction into an Appendable (e.g. StringBuilder, Writer).
+     * The cached line is appended, so nothing is allocated until the instruction changes.
+     * @param address Adress of the instruction in the memory.
+     * @param out Appendable to write the line to.
+     * @throws IOException If the Appendable fails.
+     */
+    public void disassemble(int address, Appendable out) throws IOException {
+        out.append(disassemble((short) address));
+    }
+
+    /**
+     * Disassembles an instruction that isn't taken from the memory, e.g. one recorded in a trace.
+     * The line isn't cached.
+     * @param PC Adress the instruction was executed at.
+     * @param instr The instruction.
+     * @return String with the disassembled instruction.
+     */
+    public String disassemble(int PC, short instr) {
+        return toString(PC, (byte) (instr >> 8), (byte) instr);
+    }
+
+    /**
+     * Formats a single instruction into a new String.
+     * @param PC Adress of the instruction.
+     * @param first First byte of the instruction.
+     * @param second Second byte of the instruction.
+     * @return String with the disassembled instruction.
+     */
+    private static String toString(int PC, byte first, byte second) {
+        char[] line = new char[MAX_LINE_LENGTH];
+        return new String(line, 0, format(line, 0, PC, first, second));
+    }
+
+    /**
+     * Formats a single instruction into a char array.
+     * @param line Array to write the line to, needs MAX_LINE_LENGTH characters from the offset.
+     * @param length Index of the line's first character in the array.
+     * @param PC Adress of the instruction.
+     * @param first First byte of the instruction.
+     * @param second Second byte of the instruction.
+     * @return Index after the line's last character.
+     */
+    private static int format(char[] line, int length, int PC, byte first, byte second) {
 
         // The first nibble of the instruction
         byte firstNib = (byte) ((first >> 4) & 0xF);
@@ -39,165 +129,247 @@ public class Disassembler {
         // A full 2 byte instruction held in short
         short instr = (short) (((first & 0xFF) << 8) | (second & 0xFF));
 
+        int x = (instr & 0x0F00) >> 8;
+        int y = (instr & 0x00F0) >> 4;
 
-        stringBuilder.append(String.format("%03X %02X %02X ", PC, first, second));
+        length = hex(line, length, PC, 3, HEX_UPPER);
+        length = text(line, length, " ");
+        length = hex(line, length, first & 0xFF, 2, HEX_UPPER);
+        length = text(line, length, " ");
+        length = hex(line, length, second & 0xFF, 2, HEX_UPPER);
+        length = text(line, length, " ");
 
         switch (firstNib) {
             case 0x00:
                 if ((instr & 0xFFFF) == 0x00E0) {
                     //00E0 - Clears the screen
-                    stringBuilder.append("CLS");
+                    length = text(line, length, "CLS");
                 } else if ((instr & 0xFFFF) == 0x00EE) {
                     //00EE - Returns from a subroutine
-                    stringBuilder.append("RET");
+                    length = text(line, length, "RET");
                 } else {
-                    stringBuilder.append(String.format("SYS %03X", (instr & 0x0FFF)));
+                    length = text(line, length, "SYS ");
+                    length = hex(line, length, instr & 0x0FFF, 3, HEX_UPPER);
                 }
                 break;
 
             case 0x01:
                 //1nnn - Jump to location nnn.
-                stringBuilder.append(String.format("JP %03x", (instr & 0x0FFF)));
+                length = address(line, length, "JP ", instr);
                 break;
 
             case 0x02:
                 //2nnn - Call subroutine at nnn.
-                stringBuilder.append(String.format("CALL %03x", (instr & 0x0FFF)));
+                length = address(line, length, "CALL ", instr);
                 break;
 
             case 0x03:
                 //3xkk - Skip next instruction if Vx = kk
-                stringBuilder.append(String.format("SE V%01x, %02x", (instr & 0x0F00) >> 8, (instr & 0x00FF)));
+                length = registerByte(line, length, "SE V", x, instr);
                 break;
 
             case 0x04:
                 //4xkk - Skip next instruction if Vx != kk
-                stringBuilder.append(String.format("SNE V%01x, %02x", (instr & 0x0F00) >> 8, (instr & 0x00FF)));
+                length = registerByte(line, length, "SNE V", x, instr);
                 break;
 
             case 0x05:
                 //5xy0 - Skip next instruction if Vx = Vy
-                stringBuilder.append(String.format("SE V%01x, V%02x", (instr & 0x0F00) >> 8, (instr & 0x00F0) >> 4));
+                length = text(line, length, "SE V");
+                length = hex(line, length, x, 1, HEX_LOWER);
+                length = text(line, length, ", V");
+                length = hex(line, length, y, 2, HEX_LOWER);
                 break;
 
             case 0x06:
                 //6xkk - Set Vx = kk
-                stringBuilder.append(String.format("LD V%01x, %02x", (instr & 0x0F00) >> 8, (instr & 0x00FF)));
+                length = registerByte(line, length, "LD V", x, instr);
                 break;
 
             case 0x07:
                 //7xkk - Set Vx = Vx + kk
-                stringBuilder.append(String.format("ADD V%01x, %02x", (instr & 0x0F00) >> 8, (instr & 0x00FF)));
+                length = registerByte(line, length, "ADD V", x, instr);
                 break;
 
             case 0x08:
                 if ((instr & 0x0F) == 0x00) {
                     //8xy0 - Set Vx = Vy
-                    stringBuilder.append(String.format("LD V%01x, V%01x", (instr & 0x0F00) >> 8, (instr & 0x00F0) >> 4));
+                    length = registers(line, length, "LD V", x, y);
                 } else if ((instr & 0x0F) == 0x01) {
                     //8xy1 - Set Vx = Vx or Vy
-                    stringBuilder.append(String.format("OR V%01x, V%01x", (instr & 0x0F00) >> 8, (instr & 0x00F0) >> 4));
+                    length = registers(line, length, "OR V", x, y);
                 } else if ((instr & 0x0F) == 0x02) {
                     //8xy2 - Vx = Vx AND Vy
-                    stringBuilder.append(String.format("AND V%01x, V%01x", (instr & 0x0F00) >> 8, (instr & 0x00F0) >> 4));
+                    length = registers(line, length, "AND V", x, y);
                 } else if ((instr & 0x0F) == 0x03) {
                     //8xy3 - Set Vx = Vx XOR Vy
-                    stringBuilder.append(String.format("XOR V%01x, V%01x", (instr & 0x0F00) >> 8, (instr & 0x00F0) >> 4));
+                    length = registers(line, length, "XOR V", x, y);
                 } else if ((instr & 0x0F) == 0x04) {
                     //8xy4 - Set Vx = Vx + Vy, set VF = carry
-                    stringBuilder.append(String.format("ADD V%01x, V%01x", (instr & 0x0F00) >> 8, (instr & 0x00F0) >> 4));
+                    length = registers(line, length, "ADD V", x, y);
                 } else if ((instr & 0x0F) == 0x05) {
                     //8xy5 - Set Vx = Vx - Vy, set VF = NOT borrow
-                    stringBuilder.append(String.format("SUB V%01x, V%01x", (instr & 0x0F00) >> 8, (instr & 0x00F0) >> 4));
+                    length = registers(line, length, "SUB V", x, y);
                 } else if ((instr & 0x0F) == 0x06) {
                     //8xy6 - Set Vx = Vx SHR 1, store least significant bit in VF
-                    stringBuilder.append(String.format("SHR V%01x {, V%01x}", (instr & 0x0F00) >> 8, (instr & 0x00F0) >> 4));
+                    length = shiftRegisters(line, length, "SHR V", x, y);
                 } else if ((instr & 0x0F) == 0x07) {
                     //8xy7 - Set Vx = Vy - Vx, set VF = NOT borrow
-                    stringBuilder.append(String.format("SUBN V%01x, V%01x", (instr & 0x0F00) >> 8, (instr & 0x00F0) >> 4));
+                    length = registers(line, length, "SUBN V", x, y);
                 } else if ((instr & 0x0F) == 0x0E) {
                     //8xyE - Set Vx = Vx SHL 1, store most significant bit on VF
-                    stringBuilder.append(String.format("SHL V%01x {, V%01x}", (instr & 0x0F00) >> 8, (instr & 0x00F0) >> 4));
+                    length = shiftRegisters(line, length, "SHL V", x, y);
                 } else {
-                    stringBuilder.append("UNKN 8");
+                    length = text(line, length, "UNKN 8");
                 }
                 break;
 
             case 0x09:
                 //9xy0 - Skip next instruction if Vx != Vy
-                stringBuilder.append(String.format("SNE V%01x, V%02x", (instr & 0x0F00) >> 8, (instr & 0x00F0) >> 4));
+                length = text(line, length, "SNE V");
+                length = hex(line, length, x, 1, HEX_LOWER);
+                length = text(line, length, ", V");
+                length = hex(line, length, y, 2, HEX_LOWER);
                 break;
 
             case 0x0A:
                 //Annn - set I = nnn
-                stringBuilder.append(String.format("LD I, %03x", (instr & 0x0FFF)));
+                length = address(line, length, "LD I, ", instr);
                 break;
 
             case 0x0B:
                 //Bnnn - Jump to location nnn + V0
-                stringBuilder.append(String.format("JP V0, %03x", (instr & 0x0FFF)));
+                length = address(line, length, "JP V0, ", instr);
                 break;
 
             case 0x0C:
                 //Cxkk - Set Vx = random byte AND kk
-                stringBuilder.append(String.format("RND V%01x, %02x", (instr & 0x0F00) >> 8, (instr & 0x00FF)));
+                length = registerByte(line, length, "RND V", x, instr);
                 break;
 
             case 0x0D:
                 //Dxyn - Display n-byte sprite starting at memory location I at (Vx, Vy), set VF = collision
-                stringBuilder.append(String.format("DRW V%01x, V%01x, %01x", (instr & 0x0F00) >> 8, (instr & 0x00F0) >> 4, (instr & 0x0F)));
+                length = registers(line, length, "DRW V", x, y);
+                length = text(line, length, ", ");
+                length = hex(line, length, instr & 0x0F, 1, HEX_LOWER);
                 break;
 
             case 0x0E:
                 if ((instr & 0xFF) == 0x9E) {
                     //Ex9E - Skip next instruction if key with value of Vx is pressed.
-                    stringBuilder.append(String.format("SKP V%01x", (instr & 0x0F00) >> 8));
+                    length = register(line, length, "SKP V", x, "");
                 } else if ((instr & 0xFF) == 0xA1) {
                     //ExA1 - Skip next instruction if key with the value of Vx is not pressed.
-                    stringBuilder.append(String.format("SKNP V%01x", (instr & 0x0F00) >> 8));
+                    length = register(line, length, "SKNP V", x, "");
                 } else {
-                    stringBuilder.append("UNKN E");
+                    length = text(line, length, "UNKN E");
                 }
                 break;
 
             case 0x0F:
                 if ((instr & 0xFF) == 0x07) {
                     //Fx07 - Set Vx = delay timer value.
-                    stringBuilder.append(String.format("LD V%01x, DT", (instr & 0x0F00) >> 8));
+                    length = register(line, length, "LD V", x, ", DT");
                 } else if ((instr & 0xFF) == 0x0A) {
                     //Fx0A - Wait for a key press, store the value of the key in Vx.
-                    stringBuilder.append(String.format("LD V%01x, K", (instr & 0x0F00) >> 8));
+                    length = register(line, length, "LD V", x, ", K");
                 } else if ((instr & 0xFF) == 0x15) {
                     //Fx15 - Set delay timer = Vx
-                    stringBuilder.append(String.format("LD DT, V%01x", (instr & 0x0F00) >> 8));
+                    length = register(line, length, "LD DT, V", x, "");
                 } else if ((instr & 0xFF) == 0x18) {
                     //Fx18 - Set sound timer = Vx
-                    stringBuilder.append(String.format("LD ST, V%01x", (instr & 0x0F00) >> 8));
+                    length = register(line, length, "LD ST, V", x, "");
                 } else if ((instr & 0xFF) == 0x1E) {
                     //Fx1E - Set I = I + Vx
-                    stringBuilder.append(String.format("ADD I, V%01x", (instr & 0x0F00) >> 8));
+                    length = register(line, length, "ADD I, V", x, "");
                 } else if ((instr & 0xFF) == 0x29) {
                     //Fx29 - Set I = location of sprite for digit Vx
-                    stringBuilder.append(String.format("LD F, V%01x", (instr & 0x0F00) >> 8));
+                    length = register(line, length, "LD F, V", x, "");
                 } else if ((instr & 0xFF) == 0x33) {
                     //Fx33 - Store BCD representation of Vx in memory locations I, I+1, I+2
-                    stringBuilder.append(String.format("LD B, V%01x", (instr & 0x0F00) >> 8));
+                    length = register(line, length, "LD B, V", x, "");
                 } else if ((instr & 0xFF) == 0x55) {
                     //Fx55 - Store registers V0 through Vx in memory starting at location I.
-                    stringBuilder.append(String.format("LD [I], V%01x", (instr & 0x0F00) >> 8));
+                    length = register(line, length, "LD [I], V", x, "");
                 } else if ((instr & 0xFF) == 0x65) {
                     //Fx65 - Read registers V0 through Vx from memory starting at location I.
-                    stringBuilder.append(String.format("LD V%01x, [I]", (instr & 0x0F00) >> 8));
+                    length = register(line, length, "LD V", x, ", [I]");
                 } else {
-                    stringBuilder.append("UNKN F");
+                    length = text(line, length, "UNKN F");
                 }
                 break;
 
             default:
                 break;
         }
+        return length;
+    }
 
-        return stringBuilder.toString();
+    /**
+     * Appends a mnemonic with a 12-bit address operand (nnn).
+     */
+    private static int address(char[] line, int length, String mnemonic, int instr) {
+        length = text(line, length, mnemonic);
+        return hex(line, length, instr & 0x0FFF, 3, HEX_LOWER);
+    }
+
+    /**
+     * Appends a mnemonic with a register and a byte operand (Vx, kk).
+     */
+    private static int registerByte(char[] line, int length, String mnemonic, int x, int instr) {
+        length = text(line, length, mnemonic);
+        length = hex(line, length, x, 1, HEX_LOWER);
+        length = text(line, length, ", ");
+        return hex(line, length, instr & 0x00FF, 2, HEX_LOWER);
+    }
+
+    /**
+     * Appends a mnemonic with two register operands (Vx, Vy).
+     */
+    private static int registers(char[] line, int length, String mnemonic, int x, int y) {
+        length = text(line, length, mnemonic);
+        length = hex(line, length, x, 1, HEX_LOWER);
+        length = text(line, length, ", V");
+        return hex(line, length, y, 1, HEX_LOWER);
+    }
+
+    /**
+     * Appends a shift's mnemonic with two register operands, the optional Vy in braces (Vx {, Vy}).
+     */
+    private static int shiftRegisters(char[] line, int length, String mnemonic, int x, int y) {
+        length = text(line, length, mnemonic);
+        length = hex(line, length, x, 1, HEX_LOWER);
+        length = text(line, length, " {, V");
+        length = hex(line, length, y, 1, HEX_LOWER);
+        return text(line, length, "}");
+    }
+
+    /**
+     * Appends a mnemonic with a single register operand and the text following it.
+     */
+    private static int register(char[] line, int length, String mnemonic, int x, String suffix) {
+        length = text(line, length, mnemonic);
+        length = hex(line, length, x, 1, HEX_LOWER);
+        return text(line, length, suffix);
+    }
+
+    /**
+     * Appends a text to the line.
+     */
+    private static int text(char[] line, int length, String text) {
+        text.getChars(0, text.length(), line, length);
+        return length + text.length();
+    }
+
+    /**
+     * Appends a hexadecimal number to the line, padded with zeros to the number of digits.
+     */
+    private static int hex(char[] line, int length, int value, int digits, char[] hexDigits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            line[length + i] = hexDigits[value & 0xF];
+            value >>>= 4;
+        }
+        return length + digits;
     }
 
     /**
@@ -221,4 +393,25 @@ public class Disassembler {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Disassembled line cached for an address, along with the instruction it was formatted from.
+     */
+    private static final class Line {
+
+        /**
+         * The instruction the line was formatted from.
+         */
+        final short instr;
+
+        /**
+         * The disassembled line.
+         */
+        final String text;
+
+        Line(short instr, String text) {
+            this.instr = instr;
+            this.text = text;
+        }
+    }
 }
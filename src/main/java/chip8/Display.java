@@ -4,6 +4,17 @@ package chip8;
  * Interface of the chip-8's screen.
  */
 public interface Display {
+
+    /**
+     * Width of the screen in pixels.
+     */
+    int WIDTH = 64;
+
+    /**
+     * Height of the screen in pixels.
+     */
+    int HEIGHT = 32;
+
     /**
      * Initializes the display by creating a GUI window with the screen.
      */
@@ -46,13 +57,63 @@ public interface Display {
      */
     boolean drawSprite(int x, int y, int address, int numberOfBytes);
 
+    /**
+     * Clears the whole screen.
+     */
+    void clear();
+
+    /**
+     * Gets a single row of the screen.
+     * @param y The y position of the row.
+     * @return Row's pixels, the most significant bit is the leftmost pixel.
+     */
+    long getRow(int y);
+
+    /**
+     * Copies all the rows of the screen to the given array, without allocating.
+     * Only for the emulation thread, other threads should use readFrame.
+     * @param rows Array of at least HEIGHT longs, the most significant bit of each is the leftmost pixel.
+     */
+    void copyRows(long[] rows);
+
+    /**
+     * Publishes the current screen as a new frame for the other threads (renderers, recorders).
+     * Called by the emulation thread at the frame boundaries. Never blocks and doesn't allocate.
+     * @return True if a new frame was published, false if the screen didn't change since the last one.
+     */
+    boolean publishFrame();
+
+    /**
+     * Copies the last published frame to the given array. The copy is always consistent - a whole frame,
+     * even if the emulation thread publishes a new one meanwhile. Doesn't allocate.
+     * @param rows Array of at least HEIGHT longs, the most significant bit of each is the leftmost pixel.
+     * @return Number of the copied frame.
+     */
+    long readFrame(long[] rows);
+
+    /**
+     * @return Number of the last published frame, incremented only when the screen changed.
+     */
+    long getFrameNumber();
+
+    /**
+     * @return Rows that changed between the last two rendered frames, bit y is set when row y changed.
+     */
+    int getDirtyRows();
+
+    /**
+     * @return Columns that changed between the last two rendered frames, the most significant bit is x = 0.
+     */
+    long getDirtyColumns();
+
     /**
      * @return A 2D boolean array representing current screen.
+     * Allocates a new array, readFrame is preferred for reading the screen from other threads.
      */
     boolean[][] getScreen();
 
     /**
-     * Render a single frame on the screen.
+     * Render a single frame on the screen. Nothing is rendered, if the screen didn't change since the last frame.
      */
     void render();
 
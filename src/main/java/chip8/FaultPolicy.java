@@ -0,0 +1,22 @@
+package chip8;
+
+/**
+ * Policy of handling the accesses outside of the memory or the stack.
+ */
+public enum FaultPolicy {
+
+    /**
+     * The address wraps around to the beginning of the memory (the stack), as on a 12-bit address bus.
+     */
+    WRAP,
+
+    /**
+     * Reads return 0 and writes are dropped.
+     */
+    IGNORE,
+
+    /**
+     * MemoryFaultException is thrown, e.g. to stop a broken ROM while debugging.
+     */
+    TRAP
+}
@@ -0,0 +1,116 @@
+package chip8;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Class pacing the chip-8's CPU in 60Hz frames.
+ * Instead of sleeping after every single instruction, the CPU executes a budget of cycles per frame
+ * (CPU frequency / 60, with the remainder carried over to the next frames) and then waits for the frame's deadline.
+ * Deadlines are counted from the start time, so oversleeping in one frame is corrected in the next one.
+ */
+public class FrameScheduler {
+
+    /**
+     * Number of frames per second.
+     */
+    public static final int FRAME_RATE = 60;
+
+    /**
+     * Length of a single frame in nanoseconds.
+     */
+    public static final long FRAME_NANOS = 1_000_000_000L / FRAME_RATE;
+
+    /**
+     * If the scheduler is late by more than this number of frames (e.g. the machine was suspended),
+     * it stops trying to catch up and starts counting the deadlines from now.
+     */
+    private static final int MAX_FRAMES_BEHIND = 5;
+
+    /**
+     * Frequency of the chip-8's CPU, in instructions per second.
+     */
+    private final int cpuFreq;
+
+    /**
+     * Time the frames are counted from, in nanoseconds (System.nanoTime).
+     */
+    private long startTime;
+
+    /**
+     * Number of frames since the start time.
+     */
+    private long frameCount;
+
+    /**
+     * Number of cycles handed out since the start time.
+     */
+    private long cyclesScheduled;
+
+    /**
+     * Main constructor. Starts counting the frames from now.
+     * @param cpuFreq Frequency of the CPU in Hz.
+     */
+    public FrameScheduler(int cpuFreq) {
+        this.cpuFreq = cpuFreq;
+        reset(System.nanoTime());
+    }
+
+    /**
+     * Starts counting the frames and cycles again from the given time.
+     * @param now Time in nanoseconds (System.nanoTime).
+     */
+    private void reset(long now) {
+        startTime = now;
+        frameCount = 0;
+        cyclesScheduled = 0;
+    }
+
+    /**
+     * Starts counting the frames from now, e.g. after the CPU ran unthrottled and got ahead of the real time.
+     */
+    public void resync() {
+        reset(System.nanoTime());
+    }
+
+    /**
+     * Begins the next frame.
+     * @return Number of cycles the CPU should execute in this frame.
+     */
+    public int nextFrameBudget() {
+        frameCount++;
+
+        //cycles owed up to the end of this frame, so the fractional part of cpuFreq / 60 isn't lost
+        long target = frameCount * cpuFreq / FRAME_RATE;
+        int budget = (int) (target - cyclesScheduled);
+        cyclesScheduled = target;
+
+        return budget;
+    }
+
+    /**
+     * @return Deadline of the current frame in nanoseconds (System.nanoTime).
+     */
+    public long frameDeadline() {
+        return startTime + frameCount * FRAME_NANOS;
+    }
+
+    /**
+     * Waits until the current frame's deadline. Returns immediately if the deadline has already passed.
+     */
+    public void waitForNextFrame() {
+        long deadline = frameDeadline();
+        long now = System.nanoTime();
+
+        //too far behind, drop the missed frames instead of running them all at once
+        if (now - deadline > MAX_FRAMES_BEHIND * FRAME_NANOS) {
+            reset(now);
+            return;
+        }
+
+        //parkNanos may return early, so keep parking until the deadline
+        while (deadline - now > 0) {
+            LockSupport.parkNanos(deadline - now);
+            now = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package chip8;
+
+/**
+ * Display implementation that keeps the screen in memory only.
+ * It never creates a window, so it can be used on machines without a graphical environment (containers, CI).
+ */
+public class HeadlessDisplay extends AbstractDisplay {
+
+    /**
+     * Main constructor.
+     * @param memory Reference to chip's memory.
+     * @param overlappingMode Whether to use overlapping mode.
+     */
+    public HeadlessDisplay(Memory memory, boolean overlappingMode) {
+        super(memory, overlappingMode);
+    }
+
+    /**
+     * Headless display has no window to create.
+     */
+    public void createGUI() {
+
+    }
+
+    /**
+     * Headless display has nothing to render, the screen can be read with getScreen().
+     * Only the dirty region is updated.
+     */
+    public void render() {
+        updateDirtyRegion();
+    }
+}
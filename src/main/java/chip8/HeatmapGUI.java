@@ -0,0 +1,133 @@
+package chip8;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Class creating a Swing window with the memory's access heatmap.
+ * Every pixel of the 64x64 map is a memory cell (row = address / 64, column = address % 64), reads are green,
+ * writes are red, both on a logarithmic scale. The row below the map shows the 16 stack entries.
+ * The map is redrawn on the EDT at most REFRESH_RATE times per second, the emulation only counts the accesses.
+ */
+public class HeatmapGUI {
+
+    /**
+     * Maximal number of the map's updates per second.
+     */
+    public static final int REFRESH_RATE = 15;
+
+    /**
+     * Size of the map's pixel on the screen.
+     */
+    private static final int PIXEL_SIZE = 8;
+
+    /**
+     * Number of the map's rows, 64 for the memory and one for the stack.
+     */
+    private static final int ROWS = 65;
+
+    /**
+     * Counters the map shows.
+     */
+    private MemoryHeatmap heatmap;
+
+    /**
+     * Swing JFrame.
+     */
+    private JFrame frame;
+
+    /**
+     * The map, one pixel per cell.
+     */
+    private BufferedImage image;
+
+    /**
+     * Pixels of the image.
+     */
+    private int[] pixels;
+
+    /**
+     * Swing timer redrawing the map on the EDT.
+     */
+    private Timer refreshTimer;
+
+    /**
+     * Main constructor.
+     * @param heatmap Counters to show.
+     */
+    public HeatmapGUI(MemoryHeatmap heatmap) {
+        this.heatmap = heatmap;
+
+        image = new BufferedImage(64, ROWS, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Creates a Swing window and starts the refresh timer.
+     */
+    public void createGUI() {
+        frame = new JFrame("Memory heatmap");
+        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+
+        JPanel panel = new JPanel() {
+            @Override
+            public void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                Graphics2D g2d = (Graphics2D) g.create();
+                g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+                g2d.drawImage(image, 0, 0, getWidth(), getHeight(), this);
+                g2d.dispose();
+            }
+        };
+        panel.setPreferredSize(new Dimension(64 * PIXEL_SIZE, ROWS * PIXEL_SIZE));
+        frame.getContentPane().add(panel);
+        frame.pack();
+        frame.setVisible(true);
+
+        refreshTimer = new Timer(1000 / REFRESH_RATE, e -> {
+            refresh();
+            panel.repaint();
+        });
+        refreshTimer.start();
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                refreshTimer.stop();
+            }
+        });
+    }
+
+    /**
+     * Redraws the map's pixels from the counters. Called on the EDT.
+     */
+    private void refresh() {
+        for (int address = 0; address < 4096; address++) {
+            pixels[address] = color(heatmap.getReads(address), heatmap.getWrites(address));
+        }
+        for (int entry = 0; entry < 16; entry++) {
+            pixels[4096 + entry] = color(heatmap.getStackReads(entry), heatmap.getStackWrites(entry));
+        }
+    }
+
+    /**
+     * @return RGB color of a cell - red for the writes, green for the reads.
+     */
+    private static int color(int reads, int writes) {
+        return intensity(writes) << 16 | intensity(reads) << 8;
+    }
+
+    /**
+     * @return Intensity of a count, 0 - 255, on a logarithmic scale - 1 access is dim, 2^16 and more are full.
+     */
+    private static int intensity(int count) {
+        if (count <= 0) {
+            return 0;
+        }
+        int bits = 32 - Integer.numberOfLeadingZeros(count);
+        return Math.min(255, 48 + bits * 13);
+    }
+}
@@ -2,9 +2,15 @@ package chip8;
 
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Class representing chip-8's keyboard.
+ * Key presses and releases from the window (or from scripts) are pushed to a lock-free queue as events stamped
+ * with the emulated cycle, and the emulation thread applies them at the cycle boundaries (applyEvents).
+ * So the keys' state is only changed by the emulation thread and each event becomes visible at a defined cycle.
+ * A key stays pressed for at least one instruction, so even a short tap within a single frame can be seen.
  */
 public class Keyboard implements KeyListener {
 
@@ -37,6 +43,37 @@ public class Keyboard implements KeyListener {
      */
     private int lastUsed = 0;
 
+    /**
+     * Queued key events, not applied yet. Each event is encoded as (cycle << 5) | (pressed << 4) | key.
+     */
+    private ConcurrentLinkedQueue<Long> events = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Earliest cycle each key's release can be applied at - one cycle after its press was applied.
+     * Used by the emulation thread only.
+     */
+    private long[] releaseCycles = new long[16];
+
+    /**
+     * Emulated cycle of the last applyEvents call, used to stamp the events from the window.
+     */
+    private volatile long currentCycle;
+
+    /**
+     * Thread parked in awaitEvent, unparked by the next event. Null if no thread waits.
+     */
+    private volatile Thread waitingThread;
+
+    /**
+     * Key that makes the interpreter run as fast as possible, while it's held.
+     */
+    public static final int FAST_FORWARD_KEY = KeyEvent.VK_SPACE;
+
+    /**
+     * Whether the fast-forward key is currently held.
+     */
+    private volatile boolean fastForwardPressed = false;
+
     @Override
     public void keyTyped(KeyEvent e) {
 
@@ -44,16 +81,97 @@ public class Keyboard implements KeyListener {
 
     @Override
     public void keyPressed(KeyEvent e) {
-        setKey(e.getKeyCode(), true, true);
+        if (e.getKeyCode() == FAST_FORWARD_KEY) {
+            fastForwardPressed = true;
+            return;
+        }
+        int key = getProperKeyCode(e.getKeyCode());
+        if (key >= 0) {
+            pushEvent(key, true);
+        }
     }
 
     @Override
     public void keyReleased(KeyEvent e) {
-        setKey(e.getKeyCode(), false, true);
+        if (e.getKeyCode() == FAST_FORWARD_KEY) {
+            fastForwardPressed = false;
+            return;
+        }
+        int key = getProperKeyCode(e.getKeyCode());
+        if (key >= 0) {
+            pushEvent(key, false);
+        }
     }
 
     /**
-     * Sets a single key's value - pressed or released. If useJavaKeyCodes is true,
+     * Queues a key event, applied by the emulation thread at its next cycle boundary. Can be called from any thread.
+     * @param key Chip-8's key (from 0x0 to 0xF).
+     * @param pressed True if the key was pressed, false if released.
+     */
+    public void pushEvent(int key, boolean pressed) {
+        pushEvent(key, pressed, currentCycle);
+    }
+
+    /**
+     * Queues a key event applied at the given emulated cycle, e.g. for scripted input.
+     * Can be called from any thread. Events are applied in the order they were pushed,
+     * so an event stamped with a future cycle holds back the events pushed after it.
+     * @param key Chip-8's key (from 0x0 to 0xF).
+     * @param pressed True if the key was pressed, false if released.
+     * @param cycle Emulated cycle (see CPU.getCycles()) the event is applied at.
+     */
+    public void pushEvent(int key, boolean pressed, long cycle) {
+        events.add(cycle << 5 | (pressed ? 1 << 4 : 0) | (key & 0xF));
+
+        Thread waiting = waitingThread;
+        if (waiting != null) {
+            LockSupport.unpark(waiting);
+        }
+    }
+
+    /**
+     * Applies the queued events stamped with the given cycle or an earlier one. Called by the emulation thread.
+     * A release is held back until the key has been pressed for at least one cycle.
+     * @param cycle Current emulated cycle.
+     */
+    public void applyEvents(long cycle) {
+        currentCycle = cycle;
+
+        Long event;
+        while ((event = events.peek()) != null && eventCycle(event) <= cycle) {
+            events.poll();
+            int key = (int) (event & 0xF);
+            boolean pressed = (event & 1 << 4) != 0;
+            setKey(key, pressed, false);
+            if (pressed) {
+                releaseCycles[key] = cycle + 1;
+            }
+        }
+    }
+
+    /**
+     * @return Cycle the first queued event is applied at, Long.MAX_VALUE if there are no events.
+     */
+    public long getNextEventCycle() {
+        Long event = events.peek();
+        return event == null ? Long.MAX_VALUE : eventCycle(event);
+    }
+
+    /**
+     * @param event Encoded event.
+     * @return Cycle the event is applied at - its stamp, or later for a release of a key pressed just now.
+     */
+    private long eventCycle(long event) {
+        long cycle = event >>> 5;
+        if ((event & 1 << 4) == 0) {
+            cycle = Math.max(cycle, releaseCycles[(int) (event & 0xF)]);
+        }
+        return cycle;
+    }
+
+    /**
+     * Sets a single key's value immediately - pressed or released. Should be called only by the emulation thread,
+     * other threads should use pushEvent. If useJavaKeyCodes is true,
      * uses Java KeyEvent's keycodes, otherwise uses chip 8's key values from 0 to F.
      * @param keyCode KeyCode representing a single key.
      * @param value True to set key as pressed, False to set key as released.
@@ -95,6 +213,13 @@ public class Keyboard implements KeyListener {
         return pressedKeys[keyCode];
     }
 
+    /**
+     * @return True if the fast-forward key is currently held.
+     */
+    public boolean isFastForwardPressed() {
+        return fastForwardPressed;
+    }
+
     /**
      * Given a mapped Java KeyEvent keycode, returns a proper keycode (from 0x0 to 0xF).
      * @param keyCode Java KeyEvent keycode.
@@ -157,21 +282,27 @@ public class Keyboard implements KeyListener {
     }
 
     /**
-     * Waits for a single pressed key.
-     * @return KeyCode of the most recent key used.
+     * @return KeyCode of the most recent key used, if any key is pressed, otherwise -1.
      */
-    public int waitForKey() {
+    public int getPressedKey() {
+        return currentlyPressedCount > 0 ? lastUsed : -1;
+    }
+
+    /**
+     * Parks the calling thread until a key event is queued or the timeout elapses. Uses no CPU while waiting.
+     * @param timeoutNanos Maximum time to wait (in nanoseconds).
+     * @return True if there are queued events.
+     */
+    public boolean awaitEvent(long timeoutNanos) {
+        waitingThread = Thread.currentThread();
         try {
-            while (currentlyPressedCount == 0) {
-                Thread.sleep(0);
+            if (events.isEmpty()) {
+                LockSupport.parkNanos(this, timeoutNanos);
             }
-            return lastUsed;
-        } catch (Exception e) {
-            e.printStackTrace();
+        } finally {
+            waitingThread = null;
         }
-
-        return -1;
+        return !events.isEmpty();
     }
 
 }
-
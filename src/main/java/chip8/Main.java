@@ -17,6 +17,19 @@ public class Main {
         boolean loadStoreQuirk = false;
         boolean shiftQuirk = true;
         boolean overlappingMode = true;
+        boolean headless = false;
+        long cycles = 0;
+        boolean turbo = false;
+        boolean printIPS = false;
+        boolean recompiler = false;
+        boolean profile = false;
+        boolean heatmap = false;
+        FaultPolicy faultPolicy = FaultPolicy.IGNORE;
+        int audioBufferSize = Sound.DEFAULT_BUFFER_SIZE;
+        String wavPath = null;
+        String tracePath = null;
+        String callGraphPath = null;
+        String coveragePath = null;
 
         //parsing arguments
         for (int i = 1; i < args.length; i++) {
@@ -54,6 +67,92 @@ public class Main {
                     break;
                 }
 
+                case "-headless": {
+                    headless = true;
+                    break;
+                }
+
+                case "-turbo": {
+                    turbo = true;
+                    break;
+                }
+
+                case "-jit": {
+                    recompiler = true;
+                    break;
+                }
+
+                case "-ips": {
+                    printIPS = true;
+                    break;
+                }
+
+                case "-profile": {
+                    profile = true;
+                    break;
+                }
+
+                case "-heatmap": {
+                    heatmap = true;
+                    break;
+                }
+
+                case "-faults": {
+                    if (i + 1 < args.length) {
+                        faultPolicy = FaultPolicy.valueOf(args[i + 1].toUpperCase());
+                        i++;
+                    }
+                    break;
+                }
+
+                case "-audiobuf": {
+                    if (i + 1 < args.length) {
+                        audioBufferSize = Integer.parseInt(args[i + 1]);
+                        i++;
+                    }
+                    break;
+                }
+
+                case "-wav": {
+                    if (i + 1 < args.length) {
+                        wavPath = args[i + 1];
+                        i++;
+                    }
+                    break;
+                }
+
+                case "-trace": {
+                    if (i + 1 < args.length) {
+                        tracePath = args[i + 1];
+                        i++;
+                    }
+                    break;
+                }
+
+                case "-callgraph": {
+                    if (i + 1 < args.length) {
+                        callGraphPath = args[i + 1];
+                        i++;
+                    }
+                    break;
+                }
+
+                case "-coverage": {
+                    if (i + 1 < args.length) {
+                        coveragePath = args[i + 1];
+                        i++;
+                    }
+                    break;
+                }
+
+                case "-cycles": {
+                    if (i + 1 < args.length) {
+                        cycles = Long.parseLong(args[i + 1]);
+                        i++;
+                    }
+                    break;
+                }
+
                 case "-overlap": {
                     if (i + 1 < args.length) {
                         overlappingMode = Boolean.parseBoolean(args[i + 1]);
@@ -65,12 +164,86 @@ public class Main {
         }
 
         try {
-            Chip8 chip8 = new Chip8(filename, cpuFreq, loadStoreQuirk, shiftQuirk, overlappingMode, regGUIFlag);
-            chip8.loop();
+            Chip8 chip8 = new Chip8(filename, cpuFreq, loadStoreQuirk, shiftQuirk, overlappingMode, regGUIFlag, headless);
+            chip8.setTurbo(turbo);
+            chip8.setPrintInstructionsPerSecond(printIPS);
+            chip8.setRecompilerEnabled(recompiler);
+            chip8.getMemory().setFaultPolicy(faultPolicy);
+            if (audioBufferSize != Sound.DEFAULT_BUFFER_SIZE) {
+                chip8.setAudioBufferSize(audioBufferSize);
+            }
+
+            AudioCapture audioCapture = null;
+            if (wavPath != null) {
+                audioCapture = chip8.startAudioCapture();
+            }
+
+            if (tracePath != null) {
+                chip8.startTrace(tracePath);
+            }
+            if (profile) {
+                chip8.startProfiler();
+            }
+            if (callGraphPath != null) {
+                chip8.startCallProfiler();
+            }
+            if (heatmap) {
+                chip8.startHeatmap(true);
+            }
+            if (coveragePath != null) {
+                chip8.startCoverage();
+            }
+
+            //a limited number of cycles is only used in headless mode, e.g. for running ROMs on CI
+            if (headless && cycles > 0) {
+                chip8.runCycles(cycles);
+                finish(chip8, audioCapture, wavPath, callGraphPath, coveragePath);
+            } else {
+                //the interpreter runs until it's closed, the captured audio, the trace and the reports are written on exit
+                //once the loop has stopped, so nothing is recorded while they're written
+                final AudioCapture capture = audioCapture;
+                final String path = wavPath;
+                final String callGraph = callGraphPath;
+                final String coverage = coveragePath;
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        chip8.stop();
+                        finish(chip8, capture, path, callGraph, coverage);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }));
+                chip8.loop();
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
 
     }
 
+    /**
+     * Writes the outputs of the finished run - the captured audio, the trace, the profiler's report, the call graph
+     * and the coverage.
+     * @param chip8 The interpreter.
+     * @param audioCapture Captured audio, null if the audio wasn't captured.
+     * @param wavPath Path to the WAV file.
+     * @param callGraphPath Path to the call graph's collapsed stacks, null if the calls weren't profiled.
+     * @param coveragePath Path to the coverage file, null if the coverage wasn't recorded.
+     * @throws IOException If an output can't be written.
+     */
+    private static void finish(Chip8 chip8, AudioCapture audioCapture, String wavPath, String callGraphPath,
+                               String coveragePath) throws IOException {
+        if (audioCapture != null) {
+            audioCapture.writeWav(wavPath);
+        }
+        chip8.stopTrace();
+        chip8.reportProfile(System.out);
+        if (callGraphPath != null) {
+            chip8.writeCallGraph(callGraphPath);
+        }
+        if (coveragePath != null) {
+            chip8.writeCoverage(coveragePath);
+        }
+    }
+
 }
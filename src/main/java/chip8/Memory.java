@@ -2,6 +2,7 @@ package chip8;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.file.Files;
 
 /**
@@ -27,6 +28,27 @@ public class Memory {
     public static final byte SPRITE_E = 70;
     public static final byte SPRITE_F = 75;
 
+    /**
+     * Memory is divided into pages of 64 bytes for the write tracking, address >> PAGE_SHIFT is the page's number.
+     */
+    public static final int PAGE_SHIFT = 6;
+    public static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    /**
+     * Mask of the valid addresses - any other bit set means the address is out of the memory.
+     */
+    public static final int ADDRESS_MASK = 0xFFF;
+
+    /**
+     * Mask of the valid stack addresses.
+     */
+    public static final int STACK_MASK = 0xF;
+
+    /**
+     * Minimum time between two reports of the faults (in nanoseconds).
+     */
+    private static final long REPORT_INTERVAL = 1_000_000_000L;
+
     /**
      * A 2D array holding all the initial sprites representing hex digits from 0 to F,
      * each sprite 5 bytes long, 8x5 pixels.
@@ -108,40 +130,105 @@ public class Memory {
      */
     private short[] stack;
 
+    /**
+     * Objects notified about every write to the memory.
+     */
+    private MemoryListener[] listeners = new MemoryListener[0];
+
+    /**
+     * Counters of the accesses, null if the accesses aren't counted.
+     */
+    private MemoryHeatmap heatmap;
+
+    /**
+     * Write generation - incremented with every write to the memory.
+     */
+    private long generation;
+
+    /**
+     * Generation of the last write to each of the pages, indexed by the page's number.
+     * Caches remember the generation they were filled at and compare it with the page's one,
+     * to find out whether the page changed since.
+     */
+    private long[] pageGenerations;
+
+    /**
+     * Policy of handling the accesses outside of the memory or the stack.
+     */
+    private FaultPolicy faultPolicy = FaultPolicy.IGNORE;
+
+    /**
+     * Number of the accesses outside of the memory.
+     */
+    private long faultCount;
+
+    /**
+     * Number of the accesses outside of the stack.
+     */
+    private long stackFaultCount;
+
+    /**
+     * Number of the faults since the last report.
+     */
+    private long unreportedFaults;
+
+    /**
+     * Time of the last report of the faults (System.nanoTime()).
+     */
+    private long lastReportTime = System.nanoTime() - REPORT_INTERVAL;
+
+    /**
+     * Stream the faults are reported to, null if they aren't reported.
+     */
+    private PrintStream faultReport = System.err;
+
     public Memory() {
         this.memory = new byte[4096];
         this.stack = new short[16];
+        this.pageGenerations = new long[4096 >> PAGE_SHIFT];
         this.initMemory();
     }
 
     /**
      * Gets a single byte from the memory.
+     * Valid addresses take a single, well predicted branch, out of range ones are handled by the fault policy.
      * @param address Address of the value in the memory.
      * @return Value held under the address in the memory.
      */
     public byte get(short address) {
-        if (address > 0xFFF) {
-            System.out.println("Address " + address +  " out of range!");
-            return 0x0;
-        } else {
-            return (byte) (memory[(short) address]);
+        //negative addresses have the upper bits set too
+        if ((address & ~ADDRESS_MASK) != 0) {
+            return readFault(address);
+        }
+        if (heatmap != null) {
+            heatmap.read(address);
         }
+        return memory[address];
+    }
+
+    /**
+     * Reads a single byte for a tool (disassembler, trace, analysis), not for the emulated program.
+     * The access isn't counted by the heatmap and the address is wrapped instead of faulting.
+     * @param address Address of the value in the memory.
+     * @return Value held under the address in the memory.
+     */
+    public byte peek(int address) {
+        return memory[address & ADDRESS_MASK];
     }
 
     /**
      * Sets a single byte in the memory.
+     * Valid addresses take a single, well predicted branch, out of range ones are handled by the fault policy.
      * @param address Address of the cell to set.
      * @param value Value of the cell to set.
      * @return True if successful, otherwise false.
      */
     public boolean set(short address, byte value) {
-        if (address > 0xFFF) {
-            System.out.println("Address " + address +  " out of range!");
-            return false;
-        } else {
-            memory[address] = value;
-            return true;
+        if ((address & ~ADDRESS_MASK) != 0) {
+            return writeFault(address, value);
         }
+        write(address, value);
+        return true;
     }
 
     /**
@@ -151,12 +238,16 @@ public class Memory {
      * @return Value held under the address in the stack.
      */
     public short getStack(byte address) {
-        if (address > 0x0F) {
-            System.out.println("Stack address " + address +  " out of range!");
-            return 0x0;
-        } else {
-            return stack[address];
+        if ((address & ~STACK_MASK) != 0) {
+            if (stackFault(address, "read") == FaultPolicy.IGNORE) {
+                return 0x0;
+            }
+            address &= STACK_MASK;
         }
+        if (heatmap != null) {
+            heatmap.readStack(address);
+        }
+        return stack[address];
     }
 
     /**
@@ -166,13 +257,147 @@ public class Memory {
      * @return True if successful, otherwise false.
      */
     public boolean setStack(short address, short value) {
-        if (address > 0x0F) {
-            System.out.println("Stack address " + address +  " out of range!");
-            return false;
-        } else {
-            stack[address] = value;
-            return true;
+        if ((address & ~STACK_MASK) != 0) {
+            if (stackFault(address, "write") == FaultPolicy.IGNORE) {
+                return false;
+            }
+            address &= STACK_MASK;
         }
+        if (heatmap != null) {
+            heatmap.writeStack(address);
+        }
+        stack[address] = value;
+        return true;
+    }
+
+    /**
+     * Writes a valid address and marks the write.
+     */
+    private void write(int address, byte value) {
+        memory[address] = value;
+        pageGenerations[address >> PAGE_SHIFT] = ++generation;
+        if (heatmap != null) {
+            heatmap.write(address);
+        }
+        notifyListeners(address, 1);
+    }
+
+    /**
+     * Handles a read outside of the memory.
+     * @return Value read according to the fault policy.
+     */
+    private byte readFault(int address) {
+        faultCount++;
+        report("read", address);
+        switch (faultPolicy) {
+            case WRAP:
+                return memory[address & ADDRESS_MASK];
+            case TRAP:
+                throw new MemoryFaultException("Read outside of the memory at " + hex(address), address);
+            default:
+                return 0x0;
+        }
+    }
+
+    /**
+     * Handles a write outside of the memory.
+     * @return True if the value was written (wrapped).
+     */
+    private boolean writeFault(int address, byte value) {
+        faultCount++;
+        report("write", address);
+        switch (faultPolicy) {
+            case WRAP:
+                write(address & ADDRESS_MASK, value);
+                return true;
+            case TRAP:
+                throw new MemoryFaultException("Write outside of the memory at " + hex(address), address);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Handles an access outside of the stack.
+     * @return Fault policy to apply, WRAP or IGNORE.
+     */
+    private FaultPolicy stackFault(int address, String access) {
+        stackFaultCount++;
+        report("stack " + access, address);
+        if (faultPolicy == FaultPolicy.TRAP) {
+            throw new MemoryFaultException("Stack " + access + " outside of the stack at " + address, address);
+        }
+        return faultPolicy;
+    }
+
+    /**
+     * Reports the faults at most once per REPORT_INTERVAL, so a broken ROM doesn't flood the output.
+     */
+    private void report(String access, int address) {
+        if (faultReport == null) {
+            return;
+        }
+        unreportedFaults++;
+        long now = System.nanoTime();
+        if (now - lastReportTime >= REPORT_INTERVAL) {
+            faultReport.println(unreportedFaults + " access(es) out of range, last: " + access + " at " + hex(address)
+                    + " (policy " + faultPolicy + ")");
+            unreportedFaults = 0;
+            lastReportTime = now;
+        }
+    }
+
+    /**
+     * @return Address formatted as a hexadecimal number.
+     */
+    private static String hex(int address) {
+        return (address < 0 ? "-0x" : "0x") + Integer.toHexString(Math.abs(address)).toUpperCase();
+    }
+
+    /**
+     * Sets the counters of the accesses. Only the accesses of the valid addresses are counted, the faults have
+     * their own counters.
+     * @param heatmap The counters, null to stop counting.
+     */
+    public void setHeatmap(MemoryHeatmap heatmap) {
+        this.heatmap = heatmap;
+    }
+
+    /**
+     * Sets the stream the faults are reported to, System.err by default.
+     * @param faultReport The stream, null to stop reporting the faults (they're still counted).
+     */
+    public void setFaultReport(PrintStream faultReport) {
+        this.faultReport = faultReport;
+    }
+
+    /**
+     * Sets the policy of handling the accesses outside of the memory or the stack.
+     * @param faultPolicy Policy to use.
+     */
+    public void setFaultPolicy(FaultPolicy faultPolicy) {
+        this.faultPolicy = faultPolicy;
+    }
+
+    /**
+     * @return Policy of handling the accesses outside of the memory or the stack.
+     */
+    public FaultPolicy getFaultPolicy() {
+        return faultPolicy;
+    }
+
+    /**
+     * @return Number of the accesses outside of the memory so far.
+     */
+    public long getFaultCount() {
+        return faultCount;
+    }
+
+    /**
+     * @return Number of the accesses outside of the stack so far.
+     */
+    public long getStackFaultCount() {
+        return stackFaultCount;
     }
 
     /**
@@ -204,9 +429,95 @@ public class Memory {
             memory[pointer] = x;
             pointer++;
         }
+        markWritten(0x200, program.length);
+        notifyListeners(0x200, program.length);
         return program.length;
     }
 
+    /**
+     * @return Current write generation, incremented with every write to the memory.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @param page Number of the page (address >> PAGE_SHIFT).
+     * @return Generation of the last write to the page, 0 if it was never written to.
+     */
+    public long getPageGeneration(int page) {
+        return pageGenerations[page];
+    }
+
+    /**
+     * Checks whether a part of the memory was written to since the given generation.
+     * Checks whole pages, so it may also return true when only the bytes next to the range were written.
+     * @param from Address of the first byte of the range.
+     * @param to Address after the last byte of the range.
+     * @param generation Generation to compare with, usually the value of getGeneration() from some time ago.
+     * @return True if the range might have changed, false if it certainly didn't.
+     */
+    public boolean modifiedSince(int from, int to, long generation) {
+        int last = Math.min(to - 1, 0xFFF) >> PAGE_SHIFT;
+        for (int page = Math.max(from, 0) >> PAGE_SHIFT; page <= last; page++) {
+            if (pageGenerations[page] > generation) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks a written range of the memory with a new generation.
+     * @param address Address of the first written byte.
+     * @param length Number of the written bytes.
+     */
+    private void markWritten(int address, int length) {
+        generation++;
+        int last = Math.min(address + length - 1, 0xFFF) >> PAGE_SHIFT;
+        for (int page = address >> PAGE_SHIFT; page <= last; page++) {
+            pageGenerations[page] = generation;
+        }
+    }
+
+    /**
+     * Adds a listener notified about every write to the memory.
+     * @param listener Listener to add.
+     */
+    public void addListener(MemoryListener listener) {
+        MemoryListener[] newListeners = new MemoryListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+        newListeners[listeners.length] = listener;
+        listeners = newListeners;
+    }
+
+    /**
+     * Removes a listener added with addListener.
+     * @param listener Listener to remove.
+     */
+    public void removeListener(MemoryListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                MemoryListener[] newListeners = new MemoryListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, newListeners, 0, i);
+                System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+                listeners = newListeners;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Notifies all the listeners about a write to the memory.
+     * @param address Address of the first written byte.
+     * @param length Number of the written bytes.
+     */
+    private void notifyListeners(int address, int length) {
+        for (MemoryListener listener : listeners) {
+            listener.memoryWritten(address, length);
+        }
+    }
+
     /**
      * Prints out the memory.
      */
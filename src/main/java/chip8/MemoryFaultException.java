@@ -0,0 +1,31 @@
+package chip8;
+
+/**
+ * Exception thrown by the memory for an access outside of the memory or the stack, when the TRAP policy is used.
+ */
+public class MemoryFaultException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Address of the faulting access.
+     */
+    private final int address;
+
+    /**
+     * Main constructor.
+     * @param message Description of the access.
+     * @param address Address of the faulting access.
+     */
+    public MemoryFaultException(String message, int address) {
+        super(message);
+        this.address = address;
+    }
+
+    /**
+     * @return Address of the faulting access.
+     */
+    public int getAddress() {
+        return address;
+    }
+}
@@ -0,0 +1,179 @@
+package chip8;
+
+import java.util.Arrays;
+
+/**
+ * Counters of the reads and the writes of every memory cell and every stack entry, attached to the Memory.
+ * A counted access is a single array increment. The counters may decay every frame, so they show the recent
+ * activity rather than the whole run's. The decay follows the host's frames, not the emulated ones, so
+ * a fast-forwarded run isn't slowed down by decaying thousands of times per second.
+ * Only the program's data accesses are counted - the instruction fetches go through the decode cache and
+ * the tools (disassembler, trace, analysis) read the memory with Memory.peek.
+ * The counters are written by the emulation thread only, the heatmap window reads them without
+ * synchronization - a slightly stale value only shows up as a stale pixel.
+ */
+public class MemoryHeatmap {
+
+    /**
+     * Every decay removes 1 / 2^DECAY_SHIFT of the counts, so an idle cell fades out within about a second.
+     */
+    public static final int DECAY_SHIFT = 3;
+
+    /**
+     * Reads and writes of the memory's cells, indexed by the address.
+     */
+    private final int[] reads = new int[4096];
+    private final int[] writes = new int[4096];
+
+    /**
+     * Reads and writes of the stack's entries.
+     */
+    private final int[] stackReads = new int[16];
+    private final int[] stackWrites = new int[16];
+
+    /**
+     * Whether the counts decay every frame.
+     */
+    private volatile boolean decay;
+
+    /**
+     * Time of the last decay (System.nanoTime()).
+     */
+    private long lastDecay = System.nanoTime();
+
+    /**
+     * Main constructor.
+     * @param decay Whether the counts should decay every frame.
+     */
+    public MemoryHeatmap(boolean decay) {
+        this.decay = decay;
+    }
+
+    /**
+     * Counts a read of a valid address.
+     * @param address Address of the cell.
+     */
+    public void read(int address) {
+        reads[address] = saturate(reads[address]);
+    }
+
+    /**
+     * Counts a write of a valid address.
+     * @param address Address of the cell.
+     */
+    public void write(int address) {
+        writes[address] = saturate(writes[address]);
+    }
+
+    /**
+     * Counts a read of a valid stack entry.
+     * @param address Address of the entry.
+     */
+    public void readStack(int address) {
+        stackReads[address] = saturate(stackReads[address]);
+    }
+
+    /**
+     * Counts a write of a valid stack entry.
+     * @param address Address of the entry.
+     */
+    public void writeStack(int address) {
+        stackWrites[address] = saturate(stackWrites[address]);
+    }
+
+    /**
+     * @return The count increased by one, Integer.MAX_VALUE stays - without the decay a hot cell of a long run
+     * would otherwise overflow and show up as cold.
+     */
+    private static int saturate(int count) {
+        return count != Integer.MAX_VALUE ? count + 1 : count;
+    }
+
+    /**
+     * Decays the counts, if the decay is turned on and a host's frame passed since the last decay.
+     * Called by the emulation once per emulated frame.
+     */
+    public void frame() {
+        if (!decay) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (now - lastDecay < FrameScheduler.FRAME_NANOS) {
+            return;
+        }
+        lastDecay = now;
+        decayNow();
+    }
+
+    /**
+     * Decays the counts right away.
+     */
+    public void decayNow() {
+        decay(reads);
+        decay(writes);
+        decay(stackReads);
+        decay(stackWrites);
+    }
+
+    /**
+     * Removes 1 / 2^DECAY_SHIFT of every count, at least 1 from the non-zero ones.
+     */
+    private static void decay(int[] counts) {
+        for (int i = 0; i < counts.length; i++) {
+            int count = counts[i];
+            if (count != 0) {
+                counts[i] = count - Math.max(1, count >> DECAY_SHIFT);
+            }
+        }
+    }
+
+    /**
+     * Turns the decay on or off.
+     * @param decay True to decay the counts every frame.
+     */
+    public void setDecay(boolean decay) {
+        this.decay = decay;
+    }
+
+    /**
+     * @param address Address of the cell.
+     * @return Number of the reads of the cell.
+     */
+    public int getReads(int address) {
+        return reads[address];
+    }
+
+    /**
+     * @param address Address of the cell.
+     * @return Number of the writes of the cell.
+     */
+    public int getWrites(int address) {
+        return writes[address];
+    }
+
+    /**
+     * @param address Address of the stack entry.
+     * @return Number of the reads of the entry.
+     */
+    public int getStackReads(int address) {
+        return stackReads[address];
+    }
+
+    /**
+     * @param address Address of the stack entry.
+     * @return Number of the writes of the entry.
+     */
+    public int getStackWrites(int address) {
+        return stackWrites[address];
+    }
+
+    /**
+     * Clears all the counters.
+     */
+    public void reset() {
+        Arrays.fill(reads, 0);
+        Arrays.fill(writes, 0);
+        Arrays.fill(stackReads, 0);
+        Arrays.fill(stackWrites, 0);
+    }
+}
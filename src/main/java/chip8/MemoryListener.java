@@ -0,0 +1,15 @@
+package chip8;
+
+/**
+ * Interface of the objects that have to know when the chip-8's memory is written to,
+ * e.g. caches of the decoded instructions.
+ */
+public interface MemoryListener {
+
+    /**
+     * Called after a part of the memory was written to.
+     * @param address Address of the first written byte.
+     * @param length Number of the written bytes.
+     */
+    void memoryWritten(int address, int length);
+}
@@ -0,0 +1,120 @@
+package chip8;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Opt-in profiler of the interpreter, counting the executed instructions per instruction type and per address.
+ * The CPU calls it from decodeAndExecute only while it's set, so a profile costs two array increments
+ * per instruction and nothing at all when it's turned off. The profiled program runs in the interpreter,
+ * the recompiler is bypassed.
+ */
+public class Profiler {
+
+    /**
+     * Number of the executed instructions, indexed by the micro-op number (see Decoder).
+     */
+    private final long[] instructionCounts = new long[Decoder.COUNT];
+
+    /**
+     * Number of the instructions executed at each address.
+     */
+    private final long[] addressCounts = new long[4096];
+
+    /**
+     * Counts an executed instruction. Called by the CPU.
+     * @param PC Address of the instruction.
+     * @param number Micro-op number of the instruction.
+     */
+    public void count(int PC, int number) {
+        instructionCounts[number]++;
+        addressCounts[PC & Memory.ADDRESS_MASK]++;
+    }
+
+    /**
+     * @param number Micro-op number of the instruction (see Decoder).
+     * @return Number of the executed instructions of the type.
+     */
+    public long getInstructionCount(int number) {
+        return instructionCounts[number];
+    }
+
+    /**
+     * @param address Address of the instruction.
+     * @return Number of the instructions executed at the address.
+     */
+    public long getAddressCount(int address) {
+        return addressCounts[address];
+    }
+
+    /**
+     * @return Number of all the executed instructions.
+     */
+    public long getTotal() {
+        long total = 0;
+        for (long count : instructionCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @param count Maximal number of the addresses.
+     * @return Addresses with the most executed instructions, the hottest first. Never executed addresses are left out.
+     */
+    public int[] getHottestAddresses(int count) {
+        Integer[] addresses = new Integer[addressCounts.length];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = i;
+        }
+        Arrays.sort(addresses, (a, b) -> Long.compare(addressCounts[b], addressCounts[a]));
+
+        int hot = 0;
+        while (hot < Math.min(count, addresses.length) && addressCounts[addresses[hot]] > 0) {
+            hot++;
+        }
+        int[] result = new int[hot];
+        for (int i = 0; i < hot; i++) {
+            result[i] = addresses[i];
+        }
+        return result;
+    }
+
+    /**
+     * Clears all the counters.
+     */
+    public void reset() {
+        Arrays.fill(instructionCounts, 0);
+        Arrays.fill(addressCounts, 0);
+    }
+
+    /**
+     * Writes the report - the instruction mix and the hottest addresses with their disassembled instructions.
+     * @param out Appendable to write the report to.
+     * @param disassembler Disassembler of the program's memory.
+     * @param hottest Number of the hottest addresses to list.
+     * @throws IOException If the Appendable fails.
+     */
+    public void report(Appendable out, Disassembler disassembler, int hottest) throws IOException {
+        long total = getTotal();
+        out.append(String.format("Executed instructions: %d%n%nInstruction mix:%n", total));
+
+        Integer[] numbers = new Integer[Decoder.COUNT];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = i;
+        }
+        Arrays.sort(numbers, (a, b) -> Long.compare(instructionCounts[b], instructionCounts[a]));
+        for (int number : numbers) {
+            if (instructionCounts[number] > 0) {
+                out.append(String.format("%-12s %14d %6.2f%%%n", Decoder.NAMES[number], instructionCounts[number],
+                        100.0 * instructionCounts[number] / total));
+            }
+        }
+
+        out.append(String.format("%nHottest addresses:%n"));
+        for (int address : getHottestAddresses(hottest)) {
+            out.append(String.format("%14d %6.2f%%  %s%n", addressCounts[address],
+                    100.0 * addressCounts[address] / total, disassembler.disassemble((short) address)));
+        }
+    }
+}
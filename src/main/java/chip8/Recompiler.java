@@ -0,0 +1,199 @@
+package chip8;
+
+/**
+ * Tiered execution engine running next to the CPU's interpreter.
+ * Counts how many times each block entry (an address reached by a jump, call, return or skip) is executed
+ * and translates the hot blocks into JVM bytecode with the BlockCompiler.
+ * Compiled blocks are cached by their start address. A block never crosses a memory page, so it's validated
+ * with a single comparison of its generation with the page's write generation (see Memory).
+ * Everything else is executed by the interpreter, so the results are the same as the CPU's.
+ */
+public class Recompiler {
+
+    /**
+     * Number of times a block entry has to be executed, before the block is compiled.
+     */
+    public static final int HOT_THRESHOLD = 32;
+
+    /**
+     * Reference to the CPU.
+     */
+    private CPU cpu;
+
+    /**
+     * Reference to the registry.
+     */
+    private Registry registry;
+
+    /**
+     * Reference to the memory.
+     */
+    private Memory memory;
+
+    /**
+     * Reference to the decode cache.
+     */
+    private DecodeCache decodeCache;
+
+    /**
+     * Compiler translating the blocks.
+     */
+    private BlockCompiler compiler;
+
+    /**
+     * Compiled blocks indexed by their start address, null if there's no block.
+     */
+    private CompiledBlock[] blocks;
+
+    /**
+     * Number of the instructions in the compiled blocks, indexed by their start address.
+     */
+    private int[] blockLengths;
+
+    /**
+     * Memory generation the compiled blocks were last validated at, indexed by their start address.
+     */
+    private long[] blockGenerations;
+
+    /**
+     * Raw instructions the compiled blocks were compiled from, indexed by their start address.
+     * Used to check whether a block is still valid, when its page was written to.
+     */
+    private short[][] blockCode;
+
+    /**
+     * Number of the executions of each block entry, indexed by the address.
+     */
+    private int[] hotness;
+
+    /**
+     * Whether the next instruction begins a block - the previous one jumped or wasn't compilable.
+     */
+    private boolean blockEntry = true;
+
+    /**
+     * Number of the blocks compiled so far.
+     */
+    private int compiledCount;
+
+    /**
+     * Main constructor.
+     * @param cpu Reference to the CPU.
+     * @param registry Reference to the registry.
+     * @param memory Reference to the memory.
+     * @param shiftQuirk Whether to use shiftQuirk, must be the same as the CPU's.
+     */
+    public Recompiler(CPU cpu, Registry registry, Memory memory, boolean shiftQuirk) {
+        this.cpu = cpu;
+        this.registry = registry;
+        this.memory = memory;
+        this.decodeCache = cpu.getDecodeCache();
+        this.compiler = new BlockCompiler(decodeCache, shiftQuirk);
+
+        blocks = new CompiledBlock[4096];
+        blockLengths = new int[4096];
+        blockGenerations = new long[4096];
+        blockCode = new short[4096][];
+        hotness = new int[4096];
+    }
+
+    /**
+     * Executes the given number of instructions, using the compiled blocks where possible.
+     * A block is only executed if it fits in the remaining number of instructions, so exactly cycles instructions
+     * are executed, unless the machine starts waiting for a key press (Fx0A).
+     * @param cycles Number of instructions to execute.
+     */
+    public void run(int cycles) {
+        int executed = 0;
+
+        while (executed < cycles) {
+            int pc = registry.PC & 0xFFFF;
+
+            if (pc < 0xFFF) {
+                CompiledBlock block = blocks[pc];
+
+                //the block's page was written to since the block was validated
+                if (block != null && memory.getPageGeneration(pc >> Memory.PAGE_SHIFT) > blockGenerations[pc]) {
+                    block = revalidate(pc);
+                }
+
+                if (block == null && blockEntry && ++hotness[pc] >= HOT_THRESHOLD) {
+                    block = compile(pc);
+                }
+
+                if (block != null && blockLengths[pc] <= cycles - executed) {
+                    int length = block.execute(cpu, registry);
+                    cpu.addCycles(length);
+                    executed += length;
+                    blockEntry = true;
+                    continue;
+                }
+            }
+
+            int op = decodeCache.get(pc);
+            cpu.step();
+            executed++;
+
+            if (cpu.isWaitingForKey()) {
+                return;
+            }
+
+            //instructions after jumps and after the interpreted-only instructions begin new blocks
+            blockEntry = (registry.PC & 0xFFFF) != pc + 2 || !BlockCompiler.isCompilable(op);
+        }
+    }
+
+    /**
+     * Compiles the block beginning at the address.
+     * @param start Address of the block.
+     * @return Compiled block or null if the instruction at the address can't begin a block.
+     */
+    private CompiledBlock compile(int start) {
+        hotness[start] = 0;
+
+        int length = compiler.blockLength(start);
+        if (length == 0) {
+            return null;
+        }
+
+        short[] code = new short[length];
+        for (int i = 0; i < length; i++) {
+            code[i] = (short) decodeCache.get(start + i * 2);
+        }
+
+        blocks[start] = compiler.compile(start, length);
+        blockLengths[start] = length;
+        blockGenerations[start] = memory.getGeneration();
+        blockCode[start] = code;
+        compiledCount++;
+        return blocks[start];
+    }
+
+    /**
+     * Checks whether the block's instructions changed, after its page was written to.
+     * Unchanged block (e.g. only data next to the code was written) is kept, changed one is dropped.
+     * @param start Address of the block.
+     * @return The block if it's still valid, otherwise null.
+     */
+    private CompiledBlock revalidate(int start) {
+        short[] code = blockCode[start];
+        for (int i = 0; i < code.length; i++) {
+            if ((short) decodeCache.get(start + i * 2) != code[i]) {
+                blocks[start] = null;
+                blockCode[start] = null;
+                blockLengths[start] = 0;
+                return null;
+            }
+        }
+
+        blockGenerations[start] = memory.getGeneration();
+        return blocks[start];
+    }
+
+    /**
+     * @return Number of the blocks compiled so far.
+     */
+    public int getCompiledCount() {
+        return compiledCount;
+    }
+}
@@ -9,21 +9,35 @@ import javax.sound.sampled.SourceDataLine;
  * Class representing chip-8's sound system. According to the references, it plays only one, custom tone.
  * Inspired by michaelarnauts's chip-8's sound system.
  * https://github.com/michaelarnauts/chip8-java/blob/master/Source/src/be/khleuven/arnautsmichael/chip8/Sound.java
+ * A single audio thread lives as long as the sound system. It keeps writing small chunks of samples to the line -
+ * the tone while the tone is on, silence otherwise - so starting a beep only flips a volatile flag,
+ * nothing is created or allocated per beep, and the beep's latency is bounded by the line's buffer.
  */
 public class Sound {
 
+    /**
+     * Default size of the line's buffer (in samples, ToneGenerator.SAMPLE_RATE per second), about 23ms.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    /**
+     * Number of samples written at once. The tone's state is read once per chunk, so the onset's
+     * granularity is CHUNK_SIZE samples (less than 1ms).
+     */
+    private static final int CHUNK_SIZE = 32;
+
     private AudioFormat af;
     private SourceDataLine sdl;
 
     /**
-     * Whether the sound is playing right now.
+     * Whether the tone should be playing right now. Written by the emulation, read by the audio thread.
      */
-    private boolean isPlaying;
+    private volatile boolean toneOn;
 
     /**
-     * Reference to the PlayThread object.
+     * Whether the audio thread should keep running.
      */
-    private PlayThread playThread;
+    private volatile boolean running;
 
     /**
      * Sound playing thread.
@@ -31,62 +45,111 @@ public class Sound {
     private Thread thread;
 
     /**
-     * Buffer that holds the information about the tone.
+     * Buffer the samples are generated into, reused for every chunk.
+     */
+    private byte[] buffer = new byte[CHUNK_SIZE];
+
+    /**
+     * Generator of the tone's samples.
      */
-    private byte[] buffer = new byte[256];
+    private ToneGenerator generator = new ToneGenerator();
 
     /**
-     * Default constructor. Creates the interface for sound playing and fills the tone buffer.
+     * Default constructor. Uses the default line buffer size.
      * @throws LineUnavailableException If AudioSystem's source data line is not available (due to restrictions?).
      */
     public Sound() throws LineUnavailableException {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Main constructor. Opens the line and starts the audio thread.
+     * @param bufferSize Size of the line's buffer (in samples). Smaller buffer means lower latency,
+     *                   but the sound may crackle on a busy machine.
+     * @throws LineUnavailableException If AudioSystem's source data line is not available (due to restrictions?).
+     */
+    public Sound(int bufferSize) throws LineUnavailableException {
 
-        af = new AudioFormat(44100f, 8, 1, true, false);
+        af = new AudioFormat(ToneGenerator.SAMPLE_RATE, 8, 1, true, false);
         sdl = AudioSystem.getSourceDataLine(af);
-        sdl.open(af);
-        isPlaying = false;
-        playThread = new PlayThread();
-
-        int ampl = 160;
-        byte curr = 80;
-
-        for (int i = 0; i < 255; i++) {
-            buffer[i] = curr;
-            curr += 1;
-            if (curr < ampl) {
-                curr = 80;
-            }
+        sdl.open(af, Math.max(bufferSize, CHUNK_SIZE * 2));
+        sdl.start();
+
+        running = true;
+        thread = new Thread(new PlayThread(), "Chip-8 sound");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Tries to open the sound system with the default line buffer size.
+     * @return A new Sound object or null, if the sound is unavailable on current machine.
+     */
+    public static Sound open() {
+        return open(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Tries to open the sound system.
+     * @param bufferSize Size of the line's buffer (in samples).
+     * @return A new Sound object or null, if the sound is unavailable on current machine.
+     */
+    public static Sound open(int bufferSize) {
+        try {
+            return new Sound(bufferSize);
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            e.printStackTrace();
+            return null;
         }
     }
 
+    /**
+     * Turns the tone on or off. Only sets a flag read by the audio thread, never blocks.
+     * @param on True to play the tone.
+     */
+    public void setTone(boolean on) {
+        toneOn = on;
+    }
+
     /**
      * Begin sound playing.
      */
     public void startSound() {
-        if (!isPlaying) {
-            isPlaying = true;
-            thread = new Thread(playThread);
-            thread.start();
-        }
+        setTone(true);
     }
 
     /**
      * Stop sound playing.
      */
     public void stopSound() {
-        isPlaying = false;
+        setTone(false);
+    }
+
+    /**
+     * Stops the audio thread and closes the line.
+     */
+    public void close() {
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sdl.close();
     }
 
     /**
-     * Class implementing the runnable interface. Used as a thread for sound playing.
+     * Class implementing the runnable interface. Used as the audio thread.
+     * Writing to the line blocks while the line's buffer is full, so the thread only wakes up
+     * when there's room for the next chunk.
      */
     class PlayThread implements Runnable {
 
         @Override
         public void run() {
-            sdl.start();
-
-            while (isPlaying) {
+            while (running) {
+                generator.generate(buffer, 0, CHUNK_SIZE, toneOn);
                 sdl.write(buffer, 0, buffer.length);
             }
 
@@ -0,0 +1,86 @@
+package chip8;
+
+/**
+ * Class measuring the number of instructions the CPU executes per second (IPS).
+ * The value is recalculated once per second from the CPU's cycle counter.
+ */
+public class SpeedMeter {
+
+    /**
+     * Length of the measuring window in nanoseconds.
+     */
+    private static final long WINDOW = 1_000_000_000L;
+
+    /**
+     * Whether the measured value should be printed out after each window.
+     */
+    private final boolean printFlag;
+
+    /**
+     * Beginning of the current window in nanoseconds (System.nanoTime).
+     */
+    private long windowStart;
+
+    /**
+     * Cycle counter value at the beginning of the current window.
+     */
+    private long windowCycles;
+
+    /**
+     * Instructions per second measured in the last finished window.
+     */
+    private volatile long instructionsPerSecond;
+
+    /**
+     * Main constructor.
+     * @param printFlag Whether to print out the measured value every second.
+     */
+    public SpeedMeter(boolean printFlag) {
+        this(printFlag, System.nanoTime());
+    }
+
+    /**
+     * Constructor starting the first window at a given time.
+     * @param printFlag Whether to print out the measured value every second.
+     * @param start Beginning of the first window in nanoseconds (System.nanoTime).
+     */
+    SpeedMeter(boolean printFlag, long start) {
+        this.printFlag = printFlag;
+        this.windowStart = start;
+    }
+
+    /**
+     * Updates the meter with the current value of the cycle counter.
+     * Cheap enough to call once per frame; the value is recalculated only after the window has passed.
+     * @param cycles Number of instructions executed so far.
+     */
+    public void update(long cycles) {
+        update(cycles, System.nanoTime());
+    }
+
+    /**
+     * Updates the meter with the current value of the cycle counter at a given time.
+     * @param cycles Number of instructions executed so far.
+     * @param now Current time in nanoseconds (System.nanoTime).
+     */
+    void update(long cycles, long now) {
+        long elapsed = now - windowStart;
+
+        if (elapsed >= WINDOW) {
+            instructionsPerSecond = (cycles - windowCycles) * 1_000_000_000L / elapsed;
+            windowStart = now;
+            windowCycles = cycles;
+
+            if (printFlag) {
+                System.out.println("IPS: " + instructionsPerSecond);
+            }
+        }
+    }
+
+    /**
+     * @return Instructions per second measured in the last second.
+     */
+    public long getInstructionsPerSecond() {
+        return instructionsPerSecond;
+    }
+}
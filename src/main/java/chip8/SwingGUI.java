@@ -5,18 +5,28 @@ import java.awt.*;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Swing GUI implementing the Display interface to represent chip-8's screen.
  */
-public class SwingGUI implements Display {
+public class SwingGUI extends AbstractDisplay {
+
+    //colors of the pixels
+    private static final int PIXEL_ON = 0xFFFFFF;
+    private static final int PIXEL_OFF = 0x0;
+
     /**
-     * 32 x 64 screen.
+     * Image of the screen in its native 64 x 32 resolution, scaled up when drawn.
      */
-    private boolean screen[][];
-
     private BufferedImage screenImg;
 
+    /**
+     * Pixels of the screen's image - the image's own data buffer, written directly.
+     */
+    private int[] screenPixels;
+
     /**
      * Width of a single pixel on the screen.
      */
@@ -28,9 +38,14 @@ public class SwingGUI implements Display {
     private int pixelHeight;
 
     /**
-     * Reference to the memory.
+     * Whether presenting a new frame is already scheduled on the EDT.
      */
-    private Memory memory;
+    private AtomicBoolean presentScheduled = new AtomicBoolean();
+
+    /**
+     * Task presenting a new frame on the EDT, created once.
+     */
+    private Runnable presentTask = this::present;
 
     /**
      * Reference to the keyboard.
@@ -47,34 +62,21 @@ public class SwingGUI implements Display {
      */
     private DrawBoard drawBoard;
 
-    /**
-     * Whether sprites should overlap on the screen, when they reach the border.
-     * Some chip-8 programs are written to overlap sprites only, if the whole sprite is beyond the screen.
-     * References aren't certain, whether this should be a standard. Most programs use overlapping mode by default.
-     */
-    private boolean overlappingMode;
-
-    /**
-     * Warning boolean that is set when a pixel was drawn outside of the screen bounds,
-     * and screen overlapping is turned off. This may be a desired effect (for ex. BLITZ game), or a bug.
-     */
-    private boolean warningSet = false;
-
     /**
      * Constructor creating a new JFrame and DrawBoard.
      * @param pixelSize Size of a single pixel on the screen.
      * @param memory Reference to chip's memory.
      */
     public SwingGUI(int pixelSize, Memory memory, Keyboard keyboard, boolean overlappingMode) {
+        super(memory, overlappingMode);
+
         this.pixelWidth = pixelSize;
         this.pixelHeight = pixelSize;
 
-        screen = new boolean[64][32];
-
-        this.overlappingMode = overlappingMode;
-
-        this.memory = memory;
         this.keyboard = keyboard;
+
+        screenImg = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        screenPixels = ((DataBufferInt) screenImg.getRaster().getDataBuffer()).getData();
     }
 
     /**
@@ -93,144 +95,56 @@ public class SwingGUI implements Display {
             @Override
             public void componentResized(ComponentEvent e) {
                 super.componentResized(e);
-                pixelWidth = (int) e.getComponent().getSize().getWidth() / 64;
-                pixelHeight = (int) e.getComponent().getSize().getHeight() / 32;
-                screenImg = new BufferedImage(pixelWidth * 64, pixelHeight * 32, BufferedImage.TYPE_INT_RGB);
+                //the image is scaled when drawn, only the size of a pixel changes
+                pixelWidth = Math.max(1, (int) e.getComponent().getSize().getWidth() / WIDTH);
+                pixelHeight = Math.max(1, (int) e.getComponent().getSize().getHeight() / HEIGHT);
             }
         });
 
         drawBoard = new DrawBoard();
-        drawBoard.setPreferredSize(new Dimension(pixelWidth * 64, pixelHeight * 32));
+        drawBoard.setPreferredSize(new Dimension(pixelWidth * WIDTH, pixelHeight * HEIGHT));
         frame.getContentPane().add(drawBoard);
 
-        frame.setSize(new Dimension(pixelWidth * 64, pixelHeight * 32 ));
+        frame.setSize(new Dimension(pixelWidth * WIDTH, pixelHeight * HEIGHT ));
 
         frame.setVisible(true);
 
-        screenImg = new BufferedImage(pixelWidth, pixelHeight, BufferedImage.TYPE_INT_RGB);
-
         frame.pack();
     }
 
     /**
-     * Sets a single pixel on the screen.
-     * @param x The X position on the screen.
-     * @param y The Y position on the screen.
-     * @param value True to turn pixel on, otherwise false.
-     * @param sprite True if drawing a sprite.
-     * @return True if collision occurs, otherwise false.
+     * Render a single frame on the screen. Only the changed region is repainted,
+     * nothing at all if the screen didn't change since the last frame.
+     * The frame is presented on the EDT, if the EDT didn't get to the previous one yet, the frames are merged.
      */
-    public boolean setPixel(int x, int y, boolean value, boolean sprite) {
-
-        if (!overlappingMode) {
-            if (x < 0 || x > 63 || y < 0 || y > 31) {
-                if (!warningSet) {
-                    System.out.println("Warning! Screen coordinate out out bounds, overlapping turned off.");
-                    warningSet = true;
-                }
-                return false;
-            }
-        }
-
-        while (x < 0) {
-            x = (64 + x) % 64;
-
-        }
-
-        while (y < 0) {
-            y = (32 + y) % 32;
+    public void render() {
+        if (getFrameNumber() == getPresentedFrame() || !presentScheduled.compareAndSet(false, true)) {
+            return;
         }
 
-        //drawing sprites or normal pixels
-        //when drawing sprites, pixels are XORed on the screen
-        //when not drawing a sprite, pixels are just set to the value
-        if (sprite) {
-            //getting the initial value of the pixel
-            boolean prevVal = screen[x % 64][y % 32];
-            //XOR-ing the value on the screen
-            screen[x % 64][y % 32] = value ^ screen[x % 64][y % 32];
-
-            //returns true if pixel was erased - a collision occurred, otherwise false.
-            return prevVal && !screen[x % 64][y % 32];
-        } else {
-            screen[x % 64][y % 32] = value;
-            return false;
-        }
+        SwingUtilities.invokeLater(presentTask);
     }
 
     /**
-     * Gets a single pixel from the screen.
-     * @param x The x position of the pixel on the screen.
-     * @param y The y position of the pixel on the screen.
-     * @return True if set, otherwise false.
+     * Presents the last published frame and repaints the region that changed. Runs on the EDT.
      */
-    public boolean getPixel(int x, int y) {
-        return screen[x][y];
-    }
+    private void present() {
+        presentScheduled.set(false);
 
-    /**
-     * Gets a byte representing 8 pixels from the screen, beginning from the x and y position.
-     * If x or y is bigger than the screen size, it overlaps to the other side of the screen (returns to the beginning).
-     * @param x The x position of the most significant bit.
-     * @param y The y position of the most significant bit.
-     * @return Byte representing 8 pixels from the screen.
-     */
-    public byte getByte(int x, int y) {
-        byte screenValue = 0;
-        for (int i = 0; i < 8; i++) {
-            boolean isSet = this.getPixel((byte) (x + i) % 64, (byte) y % 32);
-            if (isSet) {
-                screenValue = (byte) (screenValue | 1);
-            }
-            //shift left to make room for the next bit
-            if (i != 7) {
-                screenValue = (byte) (screenValue << 1);
-            }
+        if (!updateDirtyRegion()) {
+            return;
         }
-        return screenValue;
-    }
 
-    /**
-     * Draws a sprite on the screen at x and y position, from the memory adress.
-     * @param x The x position on the screen.
-     * @param y The y position on the screen.
-     * @param address Adress of the sprite's beginning in the memory.
-     * @param numberOfBytes Number of bytes from the memory to draw, beginning from the address.
-     * @return True if collision occurred, otherwise false.
-     */
-    public boolean drawSprite(int x, int y, int address, int numberOfBytes) {
-        boolean collision = false;
-        //for each of the bytes
-        for (int i = 0; i < numberOfBytes; i++) {
-            //get the byte from the memory
-            byte value = memory.get((short) (address + i));
-            //for each bit from the byte, draw the value to the screen
-            for (int j = 0; j < 8; j++) {
-                //collision is ORed with the return value of setPixel
-                collision = collision | this.setPixel(x + (7 - j), y + i, (value & (0x1 << j)) != 0, true);
-            }
-        }
-        return collision;
-    }
+        int rows = getDirtyRows();
+        long columns = getDirtyColumns();
 
-    /**
-     * @return A 2D boolean array representing current screen.
-     */
-    public boolean[][] getScreen() {
-        boolean[][] screenCopy = new boolean[64][32];
-        for (int x = 0; x < 64; x++) {
-            for (int y = 0; y < 32; y++) {
-                screenCopy[x][y] = screen[x][y];
-            }
-        }
-        return screenCopy;
-    }
+        //bounding rectangle of the changed pixels
+        int top = Integer.numberOfTrailingZeros(rows);
+        int bottom = HEIGHT - Integer.numberOfLeadingZeros(rows);
+        int left = Long.numberOfLeadingZeros(columns);
+        int right = WIDTH - Long.numberOfTrailingZeros(columns);
 
-    /**
-     * Render a single frame on the screen.
-     */
-    public void render() {
-        frame.repaint();
+        drawBoard.repaint(left * pixelWidth, top * pixelHeight, (right - left) * pixelWidth, (bottom - top) * pixelHeight);
     }
 
     /**
@@ -240,22 +154,27 @@ public class SwingGUI implements Display {
 
         @Override
         public Dimension getPreferredSize() {
-            return new Dimension(pixelWidth * 64, pixelHeight * 32);
+            return new Dimension(pixelWidth * WIDTH, pixelHeight * HEIGHT);
         }
 
         @Override
         public void paintComponent(Graphics g) {
             super.paintComponent(g);
 
-            for (int x = 0; x < screenImg.getWidth(); x++) {
-                for (int y = 0; y < screenImg.getHeight(); y++) {
-                    screenImg.setRGB(x, y, screen[x / pixelWidth][y / pixelHeight] ? 0xFFFFFF : 0x0);
+            //only the native 64 x 32 pixels of the presented frame are written, scaling is left to drawImage
+            int i = 0;
+            for (int y = 0; y < HEIGHT; y++) {
+                long row = presentedRows[y];
+                for (int x = 0; x < WIDTH; x++) {
+                    screenPixels[i++] = row < 0 ? PIXEL_ON : PIXEL_OFF;
+                    row <<= 1;
                 }
             }
 
             Graphics2D g2d = (Graphics2D) g.create();
 
-            g2d.drawImage(screenImg, 0, 0, this);
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            g2d.drawImage(screenImg, 0, 0, pixelWidth * WIDTH, pixelHeight * HEIGHT, this);
 
             g2d.dispose();
         }
@@ -0,0 +1,53 @@
+package chip8;
+
+/**
+ * Generator of the chip-8's only tone - a square wave, as 8-bit signed mono samples.
+ * Used by the sound system and by the audio capture, so both produce exactly the same samples.
+ */
+public class ToneGenerator {
+
+    /**
+     * Sample rate of the generated samples (in Hz).
+     */
+    public static final int SAMPLE_RATE = 44100;
+
+    /**
+     * Frequency of the tone (in Hz).
+     */
+    public static final int TONE_FREQUENCY = 440;
+
+    /**
+     * Amplitude of the tone's square wave.
+     */
+    private static final byte AMPLITUDE = 32;
+
+    /**
+     * Number of samples in a half of the tone's period.
+     */
+    private static final int HALF_PERIOD = SAMPLE_RATE / TONE_FREQUENCY / 2;
+
+    /**
+     * Position in the tone's period, kept between the calls so the wave has no clicks.
+     */
+    private int phase;
+
+    /**
+     * Generates the samples - the tone if it's on, silence otherwise.
+     * @param buffer Buffer to write the samples to.
+     * @param offset Index of the first sample in the buffer.
+     * @param length Number of the samples.
+     * @param on Whether the tone is on.
+     */
+    public void generate(byte[] buffer, int offset, int length, boolean on) {
+        for (int i = offset; i < offset + length; i++) {
+            if (on) {
+                buffer[i] = phase < HALF_PERIOD ? AMPLITUDE : -AMPLITUDE;
+                phase = (phase + 1) % (HALF_PERIOD * 2);
+            } else {
+                buffer[i] = 0;
+                //the next beep begins with a whole half-period
+                phase = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package chip8;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tool comparing two execution traces of the same ROM, e.g. run with different quirks or by different versions
+ * of the interpreter. The traces are streamed side by side, record by record, so traces of any length are compared
+ * in constant memory. The first record where the PC, the instruction, the registers, I, the timers, the memory writes
+ * or the screen differ is reported, with the surrounding instructions of both runs disassembled.
+ * The timers only match in traces recorded in emulated time (-headless or -turbo). In a real-time run
+ * they're decremented by the wall clock, so such traces are compared without the timers (-notimers).
+ * Usage: TraceDiff (FIRST TRACE) (SECOND TRACE) [-notimers]
+ */
+public class TraceDiff {
+
+    /**
+     * Number of the records shown before and after the divergence.
+     */
+    public static final int CONTEXT = 8;
+
+    /**
+     * Paths to the compared traces.
+     */
+    private final String firstPath;
+    private final String secondPath;
+
+    /**
+     * Whether the delay and sound timers are compared.
+     */
+    private boolean compareTimers = true;
+
+    /**
+     * Index of the first diverging record, -1 if the traces are the same or weren't compared yet.
+     */
+    private long divergence = -1;
+
+    /**
+     * Description of the difference, null if the traces are the same.
+     */
+    private String difference;
+
+    /**
+     * Main constructor.
+     * @param firstPath Path to the first trace.
+     * @param secondPath Path to the second trace.
+     */
+    public TraceDiff(String firstPath, String secondPath) {
+        this.firstPath = firstPath;
+        this.secondPath = secondPath;
+    }
+
+    /**
+     * Sets whether the delay and sound timers are compared, true by default.
+     * Traces recorded in real time (neither -headless nor -turbo) should be compared without the timers.
+     * @param compareTimers False to ignore the timers.
+     */
+    public void setCompareTimers(boolean compareTimers) {
+        this.compareTimers = compareTimers;
+    }
+
+    /**
+     * Compares the traces and finds the first diverging record.
+     * @return Index of the first diverging record, -1 if the traces are the same.
+     * @throws IOException If a trace can't be read.
+     */
+    public long compare() throws IOException {
+        divergence = -1;
+        difference = null;
+
+        try (TraceReader first = new TraceReader(firstPath); TraceReader second = new TraceReader(secondPath)) {
+            TraceRecord a = new TraceRecord();
+            TraceRecord b = new TraceRecord();
+
+            for (long index = 0; ; index++) {
+                boolean hasFirst = first.next(a);
+                boolean hasSecond = second.next(b);
+                if (!hasFirst && !hasSecond) {
+                    return -1;
+                }
+                if (hasFirst != hasSecond) {
+                    divergence = index;
+                    difference = (hasFirst ? "second" : "first") + " trace ends";
+                    return index;
+                }
+                if (differs(a, b)) {
+                    divergence = index;
+                    difference = describe(a, b);
+                    return index;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return True if the records differ in anything but the cycle counter (and the timers, if they aren't compared).
+     */
+    private boolean differs(TraceRecord a, TraceRecord b) {
+        return a.PC != b.PC || a.opcode != b.opcode || a.IReg != b.IReg || a.SP != b.SP
+                || compareTimers && (a.DT != b.DT || a.ST != b.ST) || a.frameHash != b.frameHash || !Arrays.equals(a.VReg, b.VReg)
+                || a.writeLength != b.writeLength || a.writeLength > 0 && (a.writeAddress != b.writeAddress
+                || !Arrays.equals(a.writeData, b.writeData));
+    }
+
+    /**
+     * Describes the first difference of the records, in the order the state is usually affected.
+     * @return Description of the difference.
+     */
+    private String describe(TraceRecord a, TraceRecord b) {
+        if (a.PC != b.PC) {
+            return String.format("PC %03X != %03X", a.PC & 0xFFFF, b.PC & 0xFFFF);
+        }
+        if (a.opcode != b.opcode) {
+            return String.format("instruction %04X != %04X", a.opcode & 0xFFFF, b.opcode & 0xFFFF);
+        }
+        for (int i = 0; i < 16; i++) {
+            if (a.VReg[i] != b.VReg[i]) {
+                return String.format("V%X %02X != %02X", i, a.VReg[i] & 0xFF, b.VReg[i] & 0xFF);
+            }
+        }
+        if (a.IReg != b.IReg) {
+            return String.format("I %03X != %03X", a.IReg & 0xFFFF, b.IReg & 0xFFFF);
+        }
+        if (a.SP != b.SP) {
+            return String.format("SP %d != %d", a.SP, b.SP);
+        }
+        if (compareTimers && (a.DT != b.DT || a.ST != b.ST)) {
+            return String.format("DT/ST %02X/%02X != %02X/%02X", a.DT & 0xFF, a.ST & 0xFF, b.DT & 0xFF, b.ST & 0xFF);
+        }
+        if (a.writeLength != b.writeLength || a.writeAddress != b.writeAddress
+                || !Arrays.equals(a.writeData, b.writeData)) {
+            return String.format("memory write %d bytes at %03X != %d bytes at %03X",
+                    a.writeLength, a.writeAddress, b.writeLength, b.writeAddress);
+        }
+        return "screen";
+    }
+
+    /**
+     * @return Index of the first diverging record found by compare(), -1 if the traces are the same.
+     */
+    public long getDivergence() {
+        return divergence;
+    }
+
+    /**
+     * @return Description of the difference found by compare(), null if the traces are the same.
+     */
+    public String getDifference() {
+        return difference;
+    }
+
+    /**
+     * Writes the result of compare() - the difference and the instructions of both runs around it.
+     * @param out Appendable to write the report to.
+     * @throws IOException If a trace can't be read or the Appendable fails.
+     */
+    public void report(Appendable out) throws IOException {
+        if (divergence < 0) {
+            out.append("Traces are the same\n");
+            return;
+        }
+
+        out.append(String.format("Traces diverge at record %d: %s%n", divergence, difference));
+
+        Disassembler disassembler = new Disassembler(new Memory());
+        try (TraceReader first = new TraceReader(firstPath); TraceReader second = new TraceReader(secondPath)) {
+            long from = Math.max(0, divergence - CONTEXT);
+            first.seek(from);
+            second.seek(from);
+
+            TraceRecord a = new TraceRecord();
+            TraceRecord b = new TraceRecord();
+            for (long index = from; index <= divergence + CONTEXT; index++) {
+                boolean hasFirst = first.next(a);
+                boolean hasSecond = second.next(b);
+                if (!hasFirst && !hasSecond) {
+                    break;
+                }
+
+                String left = hasFirst ? disassembler.disassemble(a.PC, a.opcode) : "";
+                String right = hasSecond ? disassembler.disassemble(b.PC, b.opcode) : "";
+                out.append(String.format("%s%10d  %-" + Disassembler.MAX_LINE_LENGTH + "s | %s%n",
+                        index == divergence ? ">" : " ", index, left, right));
+
+                if (index == divergence) {
+                    if (hasFirst) {
+                        out.append(registers(a));
+                    }
+                    if (hasSecond) {
+                        out.append(registers(b));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Line with the registers of the record.
+     */
+    private static String registers(TraceRecord record) {
+        StringBuilder builder = new StringBuilder("            ");
+        for (int i = 0; i < 16; i++) {
+            builder.append(String.format("%02X ", record.VReg[i] & 0xFF));
+        }
+        builder.append(String.format("I:%03X SP:%d DT:%02X ST:%02X cycle:%d%n",
+                record.IReg & 0xFFFF, record.SP, record.DT & 0xFF, record.ST & 0xFF, record.cycle));
+        return builder.toString();
+    }
+
+    /**
+     * Compares two traces given as the arguments and prints out the report.
+     * @param args Paths to the first and the second trace.
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: TraceDiff (FIRST TRACE) (SECOND TRACE) [-notimers]");
+            return;
+        }
+
+        try {
+            TraceDiff diff = new TraceDiff(args[0], args[1]);
+            diff.setCompareTimers(!(args.length > 2 && args[2].equals("-notimers")));
+            diff.compare();
+            diff.report(System.out);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
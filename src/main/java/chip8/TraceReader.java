@@ -0,0 +1,128 @@
+package chip8;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streaming reader of the execution trace written by TraceWriter.
+ * The file is mapped chunk by chunk, so a trace of any length is read in constant memory.
+ * The number of the records is taken from the header, so the unused rest of the last chunk
+ * of a trace that wasn't closed isn't read as records.
+ */
+public class TraceReader implements Closeable {
+
+    /**
+     * The trace file.
+     */
+    private final RandomAccessFile file;
+
+    /**
+     * Channel of the trace file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Number of the records in the file.
+     */
+    private final long recordCount;
+
+    /**
+     * Currently mapped chunk of the file, null if none is mapped.
+     */
+    private MappedByteBuffer buffer;
+
+    /**
+     * Index of the next record to read.
+     */
+    private long next;
+
+    /**
+     * Main constructor. Opens the file and checks its header.
+     * @param path Path to the trace file.
+     * @throws IOException If the file can't be read or isn't a trace.
+     */
+    public TraceReader(String path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        channel = file.getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(TraceWriter.HEADER_SIZE);
+        if (file.length() < TraceWriter.HEADER_SIZE) {
+            file.close();
+            throw new IOException(path + " isn't a chip-8 trace");
+        }
+        file.readFully(header.array());
+        if (header.getInt() != TraceWriter.MAGIC) {
+            file.close();
+            throw new IOException(path + " isn't a chip-8 trace");
+        }
+        int version = header.getInt();
+        int recordSize = header.getInt();
+        if (version != TraceWriter.VERSION || recordSize != TraceRecord.RECORD_SIZE) {
+            file.close();
+            throw new IOException("Unsupported trace version " + version + " in " + path);
+        }
+
+        long count = Integer.toUnsignedLong(header.getInt());
+        recordCount = Math.min(count, (channel.size() - TraceWriter.HEADER_SIZE) / TraceRecord.RECORD_SIZE);
+    }
+
+    /**
+     * Reads the next record.
+     * @param record Record to read into.
+     * @return False if there are no more records.
+     * @throws IOException If the file can't be mapped.
+     */
+    public boolean next(TraceRecord record) throws IOException {
+        if (next >= recordCount) {
+            return false;
+        }
+        if (buffer == null || !buffer.hasRemaining()) {
+            map(next);
+        }
+        record.read(buffer);
+        next++;
+        return true;
+    }
+
+    /**
+     * Moves to a record, the following next() reads it.
+     * @param index Index of the record.
+     */
+    public void seek(long index) {
+        next = Math.max(0, Math.min(index, recordCount));
+        //the chunk beginning with the record is mapped by the next read
+        buffer = null;
+    }
+
+    /**
+     * Maps the chunk beginning with the record.
+     */
+    private void map(long first) throws IOException {
+        long count = Math.min(TraceWriter.CHUNK_SIZE / TraceRecord.RECORD_SIZE, recordCount - first);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                TraceWriter.HEADER_SIZE + first * TraceRecord.RECORD_SIZE, count * TraceRecord.RECORD_SIZE);
+    }
+
+    /**
+     * @return Number of the records in the trace.
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return Index of the next record to read.
+     */
+    public long getPosition() {
+        return next;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,113 @@
+package chip8;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A single record of the execution trace - the state after one executed instruction.
+ * The records are fixed-width, RECORD_SIZE bytes, big-endian:
+ * <pre>
+ *  0 cycle (8)        8 PC (2)          10 opcode (2)      12 I (2)
+ * 14 SP (1)          15 DT (1)          16 ST (1)          17 write length (1)
+ * 18 write address (2)                  20 changed V registers mask (2)     22 reserved (2)
+ * 24 V0 - VF (16)    40 written bytes (16)                 56 frame hash (8)
+ * </pre>
+ * The readers reuse a single record, so the fields are public, like the registry's.
+ */
+public class TraceRecord {
+
+    /**
+     * Size of a record in bytes.
+     */
+    public static final int RECORD_SIZE = 64;
+
+    /**
+     * Maximal number of the written bytes kept in a record - Fx55 writes at most 16.
+     */
+    public static final int MAX_WRITE_LENGTH = 16;
+
+    /**
+     * Value of the CPU's cycle counter when the instruction was executed.
+     */
+    public long cycle;
+
+    /**
+     * Address of the instruction.
+     */
+    public short PC;
+
+    /**
+     * The instruction.
+     */
+    public short opcode;
+
+    /**
+     * The I register after the instruction.
+     */
+    public short IReg;
+
+    /**
+     * Stack pointer after the instruction.
+     */
+    public byte SP;
+
+    /**
+     * Delay timer after the instruction.
+     */
+    public byte DT;
+
+    /**
+     * Sound timer after the instruction.
+     */
+    public byte ST;
+
+    /**
+     * Number of the bytes written by the instruction (at most MAX_WRITE_LENGTH), 0 if it didn't write.
+     */
+    public int writeLength;
+
+    /**
+     * Address of the first byte written by the instruction.
+     */
+    public int writeAddress;
+
+    /**
+     * Mask of the V registers changed by the instruction, bit x set if Vx changed.
+     */
+    public int changedRegisters;
+
+    /**
+     * V registers after the instruction.
+     */
+    public final byte[] VReg = new byte[16];
+
+    /**
+     * Bytes written by the instruction, only the first writeLength are valid.
+     */
+    public final byte[] writeData = new byte[MAX_WRITE_LENGTH];
+
+    /**
+     * Hash of the screen after the instruction.
+     */
+    public long frameHash;
+
+    /**
+     * Reads the record from the buffer's current position and advances it by RECORD_SIZE.
+     * @param buffer Buffer holding the record.
+     */
+    public void read(ByteBuffer buffer) {
+        cycle = buffer.getLong();
+        PC = buffer.getShort();
+        opcode = buffer.getShort();
+        IReg = buffer.getShort();
+        SP = buffer.get();
+        DT = buffer.get();
+        ST = buffer.get();
+        writeLength = buffer.get();
+        writeAddress = buffer.getShort() & 0xFFFF;
+        changedRegisters = buffer.getShort() & 0xFFFF;
+        buffer.getShort();
+        buffer.get(VReg);
+        buffer.get(writeData);
+        frameHash = buffer.getLong();
+    }
+}
@@ -0,0 +1,248 @@
+package chip8;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writer of the binary execution trace - a TraceRecord for every instruction executed by the CPU.
+ * The records are put straight into a memory-mapped chunk of the file, so recording an instruction is a few
+ * stores into memory and the OS writes the pages out in the background. The memory writes are collected
+ * through the memory's listener, the screen is hashed only after the instructions that draw.
+ * The file begins with a HEADER_SIZE header: magic number, version, the record's size and the number of the records
+ * (an unsigned int). The file grows by whole chunks, so the count is updated with every new chunk and on closing -
+ * a killed run leaves a trace of the records up to its last chunk, without the zeros after them.
+ */
+public class TraceWriter implements MemoryListener, Closeable {
+
+    /**
+     * Magic number at the beginning of the trace file, "C8TR".
+     */
+    public static final int MAGIC = 0x43385452;
+
+    /**
+     * Version of the trace's format.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * Size of the file's header in bytes.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * Position of the number of the records in the header.
+     */
+    static final int COUNT_POSITION = 12;
+
+    /**
+     * Maximum number of the records, the count in the header is an unsigned int.
+     */
+    public static final long MAX_RECORDS = 0xFFFFFFFFL;
+
+    /**
+     * Size of a single mapped chunk of the file, in bytes - 1M records.
+     */
+    static final long CHUNK_SIZE = (long) TraceRecord.RECORD_SIZE << 20;
+
+    /**
+     * Reference to the memory.
+     */
+    private final Memory memory;
+
+    /**
+     * Reference to the display, hashed after the drawing instructions.
+     */
+    private final Display display;
+
+    /**
+     * The trace file.
+     */
+    private final RandomAccessFile file;
+
+    /**
+     * Channel of the trace file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Currently mapped chunk of the file.
+     */
+    private MappedByteBuffer buffer;
+
+    /**
+     * Position of the currently mapped chunk in the file.
+     */
+    private long chunkPosition;
+
+    /**
+     * Number of the written records.
+     */
+    private long records;
+
+    /**
+     * V registers after the previous instruction, to find the changed ones.
+     */
+    private final byte[] previousV = new byte[16];
+
+    /**
+     * First and after the last address written by the current instruction, writeStart is -1 if nothing was written.
+     */
+    private int writeStart = -1;
+    private int writeEnd;
+
+    /**
+     * Hash of the screen after the last drawing instruction.
+     */
+    private long frameHash;
+
+    /**
+     * Main constructor. Creates the file, writes the header and starts listening to the memory's writes.
+     * @param path Path to the trace file, overwritten if it exists.
+     * @param memory Reference to the memory.
+     * @param display Reference to the display.
+     * @param registry Registry of the machine, the changed registers of the first record are relative to it.
+     * @throws IOException If the file can't be created.
+     */
+    public TraceWriter(String path, Memory memory, Display display, Registry registry) throws IOException {
+        this.memory = memory;
+        this.display = display;
+
+        file = new RandomAccessFile(path, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(TraceRecord.RECORD_SIZE).putInt(0);
+        header.flip();
+        channel.write(header, 0);
+
+        chunkPosition = HEADER_SIZE - CHUNK_SIZE;
+        nextChunk();
+
+        System.arraycopy(registry.VReg, 0, previousV, 0, previousV.length);
+        frameHash = hashScreen();
+        memory.addListener(this);
+    }
+
+    /**
+     * Writes the number of the records to the header and maps the next chunk of the file.
+     */
+    private void nextChunk() throws IOException {
+        writeCount();
+        chunkPosition += CHUNK_SIZE;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, chunkPosition, CHUNK_SIZE);
+    }
+
+    /**
+     * Writes the number of the written records to the header.
+     */
+    private void writeCount() throws IOException {
+        ByteBuffer count = ByteBuffer.allocate(4);
+        count.putInt((int) records);
+        count.flip();
+        channel.write(count, COUNT_POSITION);
+    }
+
+    @Override
+    public void memoryWritten(int address, int length) {
+        if (writeStart < 0) {
+            writeStart = address;
+            writeEnd = address + length;
+        } else {
+            writeStart = Math.min(writeStart, address);
+            writeEnd = Math.max(writeEnd, address + length);
+        }
+    }
+
+    /**
+     * Records an executed instruction. Called by the CPU after each instruction.
+     * @param cycle Value of the cycle counter when the instruction was executed.
+     * @param PC Address of the instruction.
+     * @param opcode The instruction.
+     * @param registry Registry after the instruction.
+     * @throws IOException If the next chunk of the file can't be mapped or the trace is full.
+     */
+    public void record(long cycle, short PC, short opcode, Registry registry) throws IOException {
+        if (records == MAX_RECORDS) {
+            throw new IOException("The trace is full");
+        }
+        if (!buffer.hasRemaining()) {
+            nextChunk();
+        }
+
+        MappedByteBuffer out = buffer;
+        out.putLong(cycle);
+        out.putShort(PC);
+        out.putShort(opcode);
+        out.putShort(registry.IReg);
+        out.put(registry.SP);
+        out.put(registry.DT);
+        out.put(registry.ST);
+
+        int length = writeStart < 0 ? 0 : Math.min(writeEnd - writeStart, TraceRecord.MAX_WRITE_LENGTH);
+        out.put((byte) length);
+        out.putShort((short) Math.max(writeStart, 0));
+
+        int changed = 0;
+        byte[] V = registry.VReg;
+        for (int i = 0; i < 16; i++) {
+            if (V[i] != previousV[i]) {
+                changed |= 1 << i;
+                previousV[i] = V[i];
+            }
+        }
+        out.putShort((short) changed);
+        out.putShort((short) 0);
+        out.put(V);
+
+        for (int i = 0; i < TraceRecord.MAX_WRITE_LENGTH; i++) {
+            out.put(i < length ? memory.peek(writeStart + i) : 0);
+        }
+        writeStart = -1;
+
+        //only the drawing instructions (00E0, Dxyn) change the screen
+        if (opcode == 0x00E0 || (opcode & 0xF000) == 0xD000) {
+            frameHash = hashScreen();
+        }
+        out.putLong(frameHash);
+
+        records++;
+    }
+
+    /**
+     * @return Hash of the current screen.
+     */
+    private long hashScreen() {
+        long hash = 0;
+        for (int y = 0; y < Display.HEIGHT; y++) {
+            hash = (hash ^ display.getRow(y)) * 0x9E3779B97F4A7C15L;
+        }
+        return hash;
+    }
+
+    /**
+     * @return Number of the written records.
+     */
+    public long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Stops listening to the memory, writes the number of the records, cuts the file after the last record
+     * and closes it.
+     * Nothing may be recorded after closing.
+     * @throws IOException If the file can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        memory.removeListener(this);
+        buffer.force();
+        writeCount();
+        channel.truncate(HEADER_SIZE + records * TraceRecord.RECORD_SIZE);
+        file.close();
+    }
+}
@@ -7,6 +7,7 @@ import org.junit.jupiter.api.Test;
 import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
@@ -23,7 +24,7 @@ public class CPUTest {
         memory = new Memory();
         registry = new Registry();
         keyboard = new Keyboard();
-        display = new SwingGUI(12, memory, keyboard, true); //most games use screen overlapping mode
+        display = new HeadlessDisplay(memory, true); //most games use screen overlapping mode
         cpu = new CPU(memory, registry, display, keyboard, false, false);
     }
 
@@ -504,6 +505,22 @@ public class CPUTest {
         assertEquals((byte) 0xF, registry.VReg[0x2]);
     }
 
+    @Test
+    public void waitKeyNoKeyTest() {
+        registry.PC = 0x204;
+
+        //no key pressed - the instruction is executed again
+        cpu.waitKeySetReg((byte) 0x2);
+        assertEquals(0x202, registry.PC);
+        assertTrue(cpu.isWaitingForKey());
+
+        keyboard.setKey(0x7, true, false);
+        cpu.waitKeySetReg((byte) 0x2);
+        assertEquals(0x202, registry.PC);
+        assertEquals((byte) 0x7, registry.VReg[0x2]);
+        assertFalse(cpu.isWaitingForKey());
+    }
+
     @Test
     public void setDTRegTest() {
         registry.VReg[0x8] = 0x5A;
@@ -593,4 +610,24 @@ public class CPUTest {
         }
         assertEquals(0x510, registry.IReg); //I = I + 0xF + 1
     }
-}
\ No newline at end of file
+
+    @Test
+    public void selfModifyingCodeTest() {
+        //6005 - LD V0, 05
+        memory.set((short) 0x200, (byte) 0x60);
+        memory.set((short) 0x201, (byte) 0x05);
+        registry.PC = 0x200;
+
+        cpu.step();
+
+        assertEquals((byte) 0x05, registry.VReg[0]);
+
+        //overwriting the second byte of the already decoded instruction, 6007 - LD V0, 07
+        memory.set((short) 0x201, (byte) 0x07);
+        registry.PC = 0x200;
+
+        cpu.step();
+
+        assertEquals((byte) 0x07, registry.VReg[0]);
+    }
+}
@@ -0,0 +1,57 @@
+package chip8;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+public class CallProfilerTest {
+
+    @Test
+    public void callTreeTest() throws IOException {
+        Memory memory = new Memory();
+        Registry registry = new Registry();
+        CPU cpu = TestPrograms.cpu(memory, registry);
+        CallProfiler profiler = new CallProfiler(0x200, 0);
+        cpu.setCallProfiler(profiler);
+
+        int[] program = {
+                0x2210, //200: CALL 210
+                0x2220, //202: CALL 220
+                0x1204, //204: JP 204
+                0, 0, 0, 0, 0,
+                0x2220, //210: CALL 220
+                0x00EE, //212: RET
+                0, 0, 0, 0, 0, 0,
+                0x6001, //220: LD V0, 01
+                0x00EE  //222: RET
+        };
+        TestPrograms.load(memory, program);
+
+        //CALL, CALL, LD, RET, RET, CALL, LD, RET, then JP 204 twice
+        for (int i = 0; i < 10; i++) {
+            cpu.step();
+        }
+        profiler.update(cpu.getCycles());
+
+        CallNode root = profiler.getRoot();
+        assertEquals(10, root.getInclusiveInstructions());
+        assertEquals(10, root.getInclusiveCycles());
+        //CALL 210, CALL 220 and JP 204 twice
+        assertEquals(4, root.getExclusiveInstructions());
+
+        CallNode[] children = root.getChildren();
+        assertEquals(2, children.length);
+        assertEquals(0x210, children[0].getAddress());
+        assertEquals(4, children[0].getInclusiveInstructions());
+        assertEquals(2, children[0].getExclusiveInstructions());
+        assertEquals(2, children[1].getInclusiveCycles());
+        assertEquals(1, children[1].getCalls());
+
+        StringBuilder collapsed = new StringBuilder();
+        profiler.writeCollapsed(collapsed);
+        assertEquals("main 4\nmain;sub_210 2\nmain;sub_210;sub_220 2\nmain;sub_220 2\n", collapsed.toString());
+    }
+}
@@ -0,0 +1,244 @@
+package chip8;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class Chip8Test {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Writes a ROM to a temporary file.
+     * @param rom Bytes of the ROM.
+     * @return Path to the ROM file.
+     */
+    private String writeRom(int... rom) throws IOException {
+        byte[] bytes = new byte[rom.length];
+        for (int i = 0; i < rom.length; i++) {
+            bytes[i] = (byte) rom[i];
+        }
+        Path path = tempDir.resolve("test.ch8");
+        Files.write(path, bytes);
+        return path.toString();
+    }
+
+    @Test
+    public void headlessRunTest() throws IOException {
+        String rom = writeRom(
+                0x60, 0x00, //LD V0, 00
+                0x61, 0x00, //LD V1, 00
+                0xA0, 0x00, //LD I, 000 - sprite "0"
+                0xD0, 0x15, //DRW V0, V1, 5
+                0x12, 0x08  //JP 208
+        );
+
+        Chip8 chip8 = new Chip8(rom, 500, false, true, true, false, true);
+        chip8.runCycles(10);
+
+        assertTrue(chip8.getDisplay() instanceof HeadlessDisplay);
+        assertEquals((byte) 0xF0, chip8.getDisplay().getByte(0, 0));
+        assertEquals((byte) 0x90, chip8.getDisplay().getByte(0, 1));
+        assertEquals(0x208, chip8.getRegistry().PC);
+    }
+
+    @Test
+    public void breakpointTest() throws IOException {
+        String rom = writeRom(
+                0x70, 0x01, //ADD V0, 01
+                0x12, 0x00  //JP 200
+        );
+
+        Chip8 chip8 = new Chip8(rom, 500, false, true, true, false, true);
+        chip8.setRecompilerEnabled(true);
+        chip8.getDebugger().setBreakpoint(0x202);
+        chip8.runCycles(1000);
+
+        assertTrue(chip8.getDebugger().isPaused());
+        assertEquals(0x202, chip8.getRegistry().PC);
+        assertEquals(1, chip8.getRegistry().VReg[0]);
+    }
+
+    @Test
+    public void headlessTimersTest() throws IOException {
+        String rom = writeRom(
+                0x60, 0x05, //LD V0, 05
+                0xF0, 0x15, //LD DT, V0
+                0x12, 0x04  //JP 204
+        );
+
+        //600Hz gives 10 instructions per timer tick
+        Chip8 chip8 = new Chip8(rom, 600, false, true, true, false, true);
+        chip8.runCycles(30);
+
+        //timer set at cycle 2, decremented at cycles 10, 20 and 30
+        assertEquals(2, chip8.getRegistry().DT);
+    }
+
+    @Test
+    public void turboTimersTest() throws IOException {
+        String rom = writeRom(
+                0x60, 0x50, //LD V0, 50
+                0xF0, 0x15, //LD DT, V0
+                0x12, 0x04  //JP 204
+        );
+
+        //600Hz gives 10 instructions per frame, the timer is set in the first one
+        Chip8 chip8 = new Chip8(rom, 600, false, true, true, false, true);
+        chip8.setTurbo(true);
+        chip8.loop(30);
+
+        assertEquals(0x50 - 30, chip8.getRegistry().DT);
+    }
+
+    @Test
+    public void headlessKeyWaitTest() throws IOException {
+        String rom = writeRom(
+                0x60, 0x05, //LD V0, 05
+                0xF0, 0x15, //LD DT, V0
+                0xF1, 0x0A, //LD V1, K
+                0x12, 0x06  //JP 206
+        );
+
+        Chip8 chip8 = new Chip8(rom, 600, false, true, true, false, true);
+        chip8.runCycles(100);
+
+        //the machine waits for a key, while the timers keep ticking
+        assertEquals(0x204, chip8.getRegistry().PC);
+        assertEquals(0, chip8.getRegistry().DT);
+
+        chip8.getKeyboard().pushEvent(0xB, true);
+        chip8.runCycles(10);
+
+        assertEquals(0xB, chip8.getRegistry().VReg[1]);
+        assertEquals(0x206, chip8.getRegistry().PC);
+    }
+
+    @Test
+    public void scriptedInputTest() throws IOException {
+        String rom = writeRom(
+                0x60, 0x0B, //LD V0, 0B
+                0xE0, 0x9E, //SKP V0
+                0x12, 0x02, //JP 202
+                0x12, 0x06  //JP 206
+        );
+
+        Chip8 chip8 = new Chip8(rom, 600, false, true, true, false, true);
+        //key B is pressed at cycle 51, the loop sees it at the next SKP
+        chip8.getKeyboard().pushEvent(0xB, true, 51);
+
+        chip8.runCycles(51);
+        assertEquals(0x202, chip8.getRegistry().PC);
+
+        chip8.runCycles(3);
+        assertEquals(0x206, chip8.getRegistry().PC);
+    }
+
+    @Test
+    public void shortTapTest() throws IOException {
+        String rom = writeRom(
+                0x60, 0x0B, //LD V0, 0B
+                0xE0, 0x9E, //SKP V0
+                0x12, 0x02, //JP 202
+                0x12, 0x06  //JP 206
+        );
+
+        Chip8 chip8 = new Chip8(rom, 600, false, true, true, false, true);
+        //the next instruction is the SKP
+        chip8.runCycles(11);
+        assertEquals(0x202, chip8.getRegistry().PC);
+
+        //pressed and released within a single frame, the key is still down for an instruction
+        chip8.getKeyboard().pushEvent(0xB, true);
+        chip8.getKeyboard().pushEvent(0xB, false);
+        chip8.runCycles(10);
+
+        assertEquals(0x206, chip8.getRegistry().PC);
+        assertFalse(chip8.getKeyboard().getKey(0xB));
+    }
+
+    @Test
+    public void audioCaptureTest() throws IOException {
+        String rom = writeRom(
+                0x60, 0x04, //LD V0, 04
+                0xF0, 0x18, //LD ST, V0
+                0x12, 0x04  //JP 204
+        );
+
+        //600Hz gives 10 instructions per timer tick
+        Chip8 chip8 = new Chip8(rom, 600, false, true, true, false, true);
+        AudioCapture capture = chip8.startAudioCapture();
+        chip8.runCycles(60);
+
+        //6 frames, the timer set to 4 keeps the tone on while it's decremented to 3, 2 and 1
+        byte[] samples = capture.getSamples();
+        assertEquals(6 * AudioCapture.SAMPLES_PER_FRAME, samples.length);
+        assertTrue(samples[0] != 0);
+        assertTrue(samples[3 * AudioCapture.SAMPLES_PER_FRAME - 1] != 0);
+        for (int i = 3 * AudioCapture.SAMPLES_PER_FRAME; i < samples.length; i++) {
+            assertEquals(0, samples[i]);
+        }
+
+        ByteArrayOutputStream wav = new ByteArrayOutputStream();
+        capture.writeWav(wav);
+        assertEquals(44 + samples.length, wav.size());
+        assertEquals("RIFF", new String(wav.toByteArray(), 0, 4, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void shortBeepTest() throws IOException {
+        String rom = writeRom(
+                0x60, 0x02, //LD V0, 02
+                0xF0, 0x18, //LD ST, V0
+                0x12, 0x04  //JP 204
+        );
+
+        Chip8 chip8 = new Chip8(rom, 600, false, true, true, false, true);
+        AudioCapture capture = chip8.startAudioCapture();
+        chip8.runCycles(30);
+
+        //the minimum value the timer responds to still beeps for a frame
+        byte[] samples = capture.getSamples();
+        assertTrue(samples[AudioCapture.SAMPLES_PER_FRAME - 1] != 0);
+        for (int i = AudioCapture.SAMPLES_PER_FRAME; i < samples.length; i++) {
+            assertEquals(0, samples[i]);
+        }
+        assertEquals(1, chip8.getRegistry().ST);
+    }
+
+    @Test
+    public void stopTest() throws IOException, InterruptedException {
+        String rom = writeRom(
+                0x70, 0x01, //ADD V0, 01
+                0x12, 0x00  //JP 200
+        );
+
+        Chip8 chip8 = new Chip8(rom, 600, false, true, true, false, true);
+        String trace = tempDir.resolve("run.trace").toString();
+        chip8.startTrace(trace);
+        Thread loop = new Thread(chip8::loop);
+        loop.start();
+        Thread.sleep(50);
+
+        //the trace is closed only after the loop has ended, as in the shutdown hook
+        chip8.stop();
+        loop.join(1000);
+        assertFalse(loop.isAlive());
+        chip8.stopTrace();
+
+        try (TraceReader reader = new TraceReader(trace)) {
+            assertTrue(reader.getRecordCount() > 0);
+        }
+    }
+}
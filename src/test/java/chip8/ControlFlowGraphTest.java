@@ -0,0 +1,85 @@
+package chip8;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class ControlFlowGraphTest {
+
+    private Memory load(int... program) {
+        return TestPrograms.load(new Memory(), program);
+    }
+
+    @Test
+    public void blocksTest() {
+        Memory memory = load(
+                0xA20E, //200: LD I, 20E
+                0x2210, //202: CALL 210
+                0x3001, //204: SE V0, 01
+                0x1200, //206: JP 200
+                0x120C, //208: JP 20C
+                0xB300, //20A: unreachable
+                0xB300, //20C: JP V0, 300
+                0xF0F0, //20E: sprite
+                0x7001, //210: ADD V0, 01
+                0x00EE  //212: RET
+        );
+
+        ControlFlowGraph graph = ControlFlowGraph.analyze(memory);
+
+        assertEquals(ControlFlowGraph.CODE, graph.getType(0x200));
+        assertEquals(ControlFlowGraph.OPERAND, graph.getType(0x201));
+        assertEquals(ControlFlowGraph.DATA, graph.getType(0x20E));
+        assertEquals(ControlFlowGraph.UNKNOWN, graph.getType(0x20A));
+        assertTrue(graph.isSubroutine(0x210));
+        assertFalse(graph.isSubroutine(0x200));
+
+        BasicBlock[] blocks = graph.getBlocks();
+        assertEquals(6, blocks.length);
+
+        BasicBlock entry = graph.getBlockAt(0x200);
+        assertEquals(0x204, entry.getEnd());
+        assertEquals(0x210, entry.getCallTarget());
+        assertArrayEquals(new int[] {0x204}, entry.getSuccessors());
+
+        assertArrayEquals(new int[] {0x206, 0x208}, graph.getBlockAt(0x204).getSuccessors());
+        assertArrayEquals(new int[] {0x200}, graph.getBlockAt(0x206).getSuccessors());
+        assertArrayEquals(new int[] {0x20C}, graph.getBlockAt(0x208).getSuccessors());
+        assertTrue(graph.getBlockAt(0x20C).isIndirect());
+        assertEquals(0, graph.getBlockAt(0x20C).getSuccessors().length);
+
+        BasicBlock subroutine = graph.getBlockContaining(0x212);
+        assertEquals(0x210, subroutine.getStart());
+        assertEquals(2, subroutine.getLength());
+        assertNull(graph.getBlockContaining(0x20A));
+    }
+
+    @Test
+    public void loopTest() {
+        //a loop jumping into the middle of the straight-line code splits it
+        Memory memory = load(
+                0x6000, //200: LD V0, 00
+                0x7001, //202: ADD V0, 01
+                0x7101, //204: ADD V1, 01
+                0x1202  //206: JP 202
+        );
+
+        ControlFlowGraph graph = ControlFlowGraph.analyze(memory);
+
+        assertEquals(2, graph.getBlocks().length);
+        assertArrayEquals(new int[] {0x202}, graph.getBlockAt(0x200).getSuccessors());
+        assertEquals(0x208, graph.getBlockAt(0x202).getEnd());
+        assertEquals(ControlFlowGraph.UNKNOWN, graph.getType(0x208));
+
+        //addresses outside of the memory are neither code nor blocks
+        assertEquals(ControlFlowGraph.UNKNOWN, graph.getType(0x1000));
+        assertFalse(graph.isSubroutine(-1));
+        assertNull(graph.getBlockAt(0x1000));
+        assertNull(graph.getBlockContaining(-2));
+    }
+}
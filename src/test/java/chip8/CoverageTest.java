@@ -0,0 +1,86 @@
+package chip8;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class CoverageTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final int[] PROGRAM = {
+            0x3000, //200: SE V0, 00
+            0x6001, //202: LD V0, 01
+            0x4001, //204: SNE V0, 01
+            0x1200, //206: JP 200
+            0x120E, //208: JP 20E
+            0xF0F0, //20A: data
+            0x6002, //20C: LD V0, 02 - never reached
+            0x120E  //20E: JP 20E
+    };
+
+    /**
+     * Runs the program with the V0 set to the value and records the coverage.
+     */
+    private Coverage run(Memory memory, int V0) {
+        Registry registry = new Registry();
+        CPU cpu = TestPrograms.cpu(memory, registry);
+        Coverage coverage = new Coverage();
+        cpu.setCoverage(coverage);
+        registry.PC = 0x200;
+        registry.VReg[0] = (byte) V0;
+        for (int i = 0; i < 10; i++) {
+            cpu.step();
+        }
+        return coverage;
+    }
+
+    @Test
+    public void coverageTest() throws IOException {
+        Memory memory = new Memory();
+        TestPrograms.load(memory, PROGRAM);
+
+        //V0 = 0 skips the LD and the jump back, V0 = 5 loops through both
+        Coverage first = run(memory, 0);
+        assertTrue(first.isTaken(0x200));
+        assertFalse(first.isNotTaken(0x200));
+        assertTrue(first.isExecuted(0x204));
+        assertTrue(first.isTaken(0x204));
+        assertFalse(first.isExecuted(0x202));
+
+        //merged through the files, as from parallel runs
+        String path = tempDir.resolve("second.cov").toString();
+        run(memory, 5).write(path);
+        first.merge(Coverage.read(path));
+        assertTrue(first.isExecuted(0x202));
+        assertTrue(first.isNotTaken(0x200));
+        assertTrue(first.isNotTaken(0x204));
+        assertEquals(6, first.getExecutedCount());
+
+        CoverageReport report = new CoverageReport(memory, PROGRAM.length * 2, first);
+
+        StringBuilder listing = new StringBuilder();
+        report.writeListing(listing);
+        String[] lines = listing.toString().split("\n");
+        assertEquals("+ 200 30 00 SE V0, 00  ; skip: both", lines[0]);
+        assertEquals("+ 204 40 01 SNE V0, 01  ; skip: both", lines[2]);
+        assertEquals("  20A DB F0 F0 60 02", lines[5]);
+        assertEquals(7, lines.length);
+
+        StringBuilder lcov = new StringBuilder();
+        report.writeLcov(lcov, "test.ch8");
+        String info = lcov.toString();
+        assertTrue(info.contains("DA:512,1\n"));
+        assertTrue(info.contains("BRDA:516,0,1,1\n"));
+        assertTrue(info.contains("LF:6\nLH:6\n"));
+        assertTrue(info.contains("BRF:4\nBRH:4\n"));
+    }
+}
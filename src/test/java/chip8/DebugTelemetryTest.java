@@ -0,0 +1,37 @@
+package chip8;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+
+public class DebugTelemetryTest {
+
+    @Test
+    public void mailboxTest() {
+        DebugTelemetry telemetry = new DebugTelemetry();
+        Registry registry = new Registry();
+        assertNull(telemetry.take());
+
+        //an unread snapshot is replaced by the newer one
+        registry.PC = 0x200;
+        telemetry.publish(registry, 1);
+        registry.PC = 0x202;
+        registry.VReg[3] = 7;
+        telemetry.publish(registry, 2);
+
+        DebugSnapshot snapshot = telemetry.take();
+        assertEquals(0x202, snapshot.PC);
+        assertEquals(7, snapshot.VReg[3]);
+        assertEquals(2, snapshot.cycles);
+        assertNull(telemetry.take());
+        assertEquals(2, telemetry.getPublishedCount());
+
+        //the replaced and the recycled snapshots are reused
+        telemetry.recycle(snapshot);
+        telemetry.publish(registry, 3);
+        assertSame(snapshot, telemetry.take());
+    }
+}
@@ -0,0 +1,134 @@
+package chip8;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class DebuggerTest {
+
+    private Memory memory;
+    private Registry registry;
+    private Keyboard keyboard;
+    private CPU cpu;
+    private Debugger debugger;
+
+    @BeforeEach
+    public void setUp() {
+        memory = new Memory();
+        registry = new Registry();
+        keyboard = new Keyboard();
+        cpu = new CPU(memory, registry, new HeadlessDisplay(memory, true), keyboard, false, false);
+        debugger = new Debugger();
+        cpu.setDebugger(debugger);
+
+        int[] program = {
+                0x7001, //200: ADD V0, 01
+                0xA300, //202: LD I, 300
+                0xF055, //204: LD [I], V0
+                0x1200  //206: JP 200
+        };
+        TestPrograms.load(memory, program);
+    }
+
+    private void run(int steps) {
+        for (int i = 0; i < steps; i++) {
+            cpu.step();
+        }
+    }
+
+    @Test
+    public void breakpointTest() {
+        assertFalse(debugger.isArmed());
+
+        debugger.setBreakpoint(0x204);
+        run(10);
+        assertTrue(cpu.isPaused());
+        assertEquals(BreakReason.BREAKPOINT, debugger.getBreakReason());
+        assertEquals(0x204, registry.PC);
+        assertEquals(2, cpu.getCycles());
+
+        //a single step executes the instruction at the breakpoint
+        debugger.step();
+        run(5);
+        assertEquals(0x206, registry.PC);
+        assertTrue(cpu.isPaused());
+
+        //resumed machine runs until it reaches the breakpoint again
+        debugger.resume();
+        run(10);
+        assertEquals(0x204, registry.PC);
+        assertEquals(2, registry.VReg[0]);
+
+        debugger.clearBreakpoint(0x204);
+        debugger.resume();
+        assertFalse(debugger.isArmed());
+        run(4);
+        assertEquals(3, registry.VReg[0]);
+    }
+
+    @Test
+    public void keyWaitBreakpointTest() {
+        //200: LD V1, K
+        memory.set((short) 0x200, (byte) 0xF1);
+        memory.set((short) 0x201, (byte) 0x0A);
+
+        debugger.setBreakpoint(0x200);
+        run(3);
+        assertTrue(cpu.isPaused());
+        assertEquals(0x200, registry.PC);
+
+        //the waiting instruction is executed again and again, the breakpoint isn't hit until the PC moves on
+        debugger.resume();
+        run(5);
+        assertFalse(cpu.isPaused());
+        assertTrue(cpu.isWaitingForKey());
+
+        keyboard.setKey(0xB, true, false);
+        run(1);
+        assertEquals(0xB, registry.VReg[1]);
+        assertEquals(0x202, registry.PC);
+
+        run(4);
+        assertTrue(cpu.isPaused());
+        assertEquals(0x200, registry.PC);
+    }
+
+    @Test
+    public void watchpointTest() {
+        debugger.addWatchpoint(0x300, 0x301, Debugger.WATCH_WRITE);
+        run(10);
+        assertEquals(BreakReason.WATCH_WRITE, debugger.getBreakReason());
+        assertEquals(0x204, registry.PC);
+        assertEquals(0, memory.get((short) 0x300));
+
+        //reads don't hit a write watchpoint
+        debugger.removeWatchpoint(0x300, 0x301);
+        debugger.addWatchpoint(0x300, 0x301, Debugger.WATCH_READ);
+        debugger.resume();
+        run(10);
+        assertFalse(cpu.isPaused());
+    }
+
+    @Test
+    public void conditionTest() {
+        debugger.addRegisterCondition(0, 3);
+        run(20);
+        assertEquals(BreakReason.CONDITION, debugger.getBreakReason());
+        assertEquals(3, registry.VReg[0]);
+        assertEquals(0x202, registry.PC);
+
+        //the condition stops the machine only when it becomes true
+        debugger.resume();
+        run(4);
+        assertFalse(cpu.isPaused());
+        assertEquals(4, registry.VReg[0]);
+
+        debugger.pause();
+        run(1);
+        assertEquals(BreakReason.PAUSE, debugger.getBreakReason());
+    }
+}
@@ -0,0 +1,82 @@
+package chip8;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+
+public class DisassemblerTest {
+
+    @Test
+    public void formatTest() throws IOException {
+        Memory memory = new Memory();
+        Disassembler disassembler = new Disassembler(memory);
+        memory.set((short) 0x200, (byte) 0xD1);
+        memory.set((short) 0x201, (byte) 0x25);
+        memory.set((short) 0x202, (byte) 0x8A);
+        memory.set((short) 0x203, (byte) 0xBE);
+
+        assertEquals("200 D1 25 DRW V1, V2, 5", disassembler.disassemble((short) 0x200));
+        assertEquals("202 8A BE SHL Va {, Vb}", disassembler.disassemble((short) 0x202));
+
+        char[] line = new char[Disassembler.MAX_LINE_LENGTH + 2];
+        int length = disassembler.disassemble(0x200, line, 2);
+        assertEquals("200 D1 25 DRW V1, V2, 5", new String(line, 2, length));
+
+        StringBuilder builder = new StringBuilder();
+        disassembler.disassemble(0x202, builder);
+        assertEquals("202 8A BE SHL Va {, Vb}", builder.toString());
+    }
+
+    @Test
+    public void cacheTest() {
+        Memory memory = new Memory();
+        Disassembler disassembler = new Disassembler(memory);
+        memory.set((short) 0x200, (byte) 0x12);
+        memory.set((short) 0x201, (byte) 0x34);
+
+        String line = disassembler.disassemble((short) 0x200);
+        assertSame(line, disassembler.disassemble((short) 0x200));
+
+        //writing the second byte invalidates the line
+        memory.set((short) 0x201, (byte) 0x36);
+        String changed = disassembler.disassemble((short) 0x200);
+        assertNotSame(line, changed);
+        assertEquals("200 12 36 JP 236", changed);
+    }
+
+    @Test
+    public void concurrentFormatTest() throws InterruptedException {
+        Memory memory = new Memory();
+        Disassembler disassembler = new Disassembler(memory);
+        memory.set((short) 0x200, (byte) 0xD1);
+        memory.set((short) 0x201, (byte) 0x25);
+        memory.set((short) 0x202, (byte) 0x8A);
+        memory.set((short) 0x203, (byte) 0xBE);
+
+        //the debug view and the profiler's report may format lines at the same time
+        int[] wrong = new int[1];
+        Thread other = new Thread(() -> {
+            char[] line = new char[Disassembler.MAX_LINE_LENGTH];
+            for (int i = 0; i < 100000; i++) {
+                int length = disassembler.disassemble(0x202, line, 0);
+                if (!"202 8A BE SHL Va {, Vb}".equals(new String(line, 0, length))) {
+                    wrong[0]++;
+                }
+            }
+        });
+        other.start();
+
+        char[] line = new char[Disassembler.MAX_LINE_LENGTH];
+        for (int i = 0; i < 100000; i++) {
+            int length = disassembler.disassemble(0x200, line, 0);
+            assertEquals("200 D1 25 DRW V1, V2, 5", new String(line, 0, length));
+        }
+        other.join();
+        assertEquals(0, wrong[0]);
+    }
+}
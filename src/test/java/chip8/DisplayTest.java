@@ -0,0 +1,162 @@
+package chip8;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class DisplayTest {
+
+    /**
+     * Draws a sprite pixel by pixel on a boolean screen, the way the display did before the screen was bit-packed.
+     */
+    private boolean drawReference(boolean[][] screen, Memory memory, int x, int y, int address, int numberOfBytes,
+                                  boolean overlappingMode) {
+        boolean collision = false;
+        for (int i = 0; i < numberOfBytes; i++) {
+            byte value = memory.get((short) (address + i));
+            for (int j = 0; j < 8; j++) {
+                int px = x + (7 - j);
+                int py = y + i;
+                if (!overlappingMode && (px < 0 || px > 63 || py < 0 || py > 31)) {
+                    continue;
+                }
+                px = ((px % 64) + 64) % 64;
+                py = ((py % 32) + 32) % 32;
+
+                boolean prev = screen[px][py];
+                screen[px][py] ^= (value & (0x1 << j)) != 0;
+                collision |= prev && !screen[px][py];
+            }
+        }
+        return collision;
+    }
+
+    @Test
+    public void randomSpritesTest() {
+        for (boolean overlappingMode : new boolean[] {true, false}) {
+            Random random = new Random(1);
+            Memory memory = new Memory();
+            for (int i = 0x200; i < 0x300; i++) {
+                memory.set((short) i, (byte) random.nextInt(256));
+            }
+
+            Display display = new HeadlessDisplay(memory, overlappingMode);
+            boolean[][] expected = new boolean[64][32];
+
+            for (int sprite = 0; sprite < 2000; sprite++) {
+                //the coordinates come from the signed registers
+                int x = (byte) random.nextInt(256);
+                int y = (byte) random.nextInt(256);
+                int address = 0x200 + random.nextInt(0xF0);
+                int numberOfBytes = random.nextInt(16);
+
+                boolean collision = drawReference(expected, memory, x, y, address, numberOfBytes, overlappingMode);
+                assertEquals(collision, display.drawSprite(x, y, address, numberOfBytes), "sprite " + sprite);
+
+                for (int py = 0; py < 32; py++) {
+                    for (int px = 0; px < 64; px++) {
+                        assertEquals(expected[px][py], display.getPixel(px, py), "sprite " + sprite);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rowsTest() {
+        Display display = new HeadlessDisplay(new Memory(), true);
+        display.setPixel(0, 3, true, false);
+        display.setPixel(63, 3, true, false);
+
+        assertEquals(0x8000000000000001L, display.getRow(3));
+
+        long[] rows = new long[Display.HEIGHT];
+        display.copyRows(rows);
+        assertEquals(0x8000000000000001L, rows[3]);
+        assertEquals(0, rows[4]);
+
+        display.clear();
+        assertEquals(0, display.getRow(3));
+    }
+
+    @Test
+    public void dirtyRegionTest() {
+        Memory memory = new Memory();
+        Display display = new HeadlessDisplay(memory, true);
+
+        display.publishFrame();
+        display.render();
+        assertEquals(0, display.getDirtyRows());
+
+        //sprite "0" at (10, 4), 8 x 5 pixels
+        display.drawSprite(10, 4, Memory.SPRITE_0, 5);
+        display.publishFrame();
+        display.render();
+        assertEquals(0x1F << 4, display.getDirtyRows());
+        assertEquals(0xF0L << (64 - 18), display.getDirtyColumns());
+
+        //nothing changed since the last frame
+        display.publishFrame();
+        display.render();
+        assertEquals(0, display.getDirtyRows());
+        assertEquals(0, display.getDirtyColumns());
+
+        //sprite drawn and erased within a single frame
+        display.drawSprite(40, 20, Memory.SPRITE_8, 5);
+        display.drawSprite(40, 20, Memory.SPRITE_8, 5);
+        display.publishFrame();
+        display.render();
+        assertEquals(0, display.getDirtyRows());
+    }
+
+    @Test
+    public void publishFrameTest() {
+        Display display = new HeadlessDisplay(new Memory(), true);
+        long[] rows = new long[Display.HEIGHT];
+
+        display.setPixel(5, 7, true, false);
+        assertEquals(0, display.readFrame(rows));
+        assertEquals(0, rows[7]);
+
+        assertTrue(display.publishFrame());
+        display.setPixel(6, 7, true, false);
+        assertEquals(1, display.readFrame(rows));
+        assertEquals(1L << (63 - 5), rows[7]);
+
+        //unchanged screen isn't published again
+        assertTrue(display.publishFrame());
+        assertFalse(display.publishFrame());
+        assertEquals(2, display.getFrameNumber());
+    }
+
+    @Test
+    public void concurrentReadTest() throws InterruptedException {
+        Display display = new HeadlessDisplay(new Memory(), true);
+
+        //every published frame has all the rows equal, a torn frame would have different ones
+        Thread writer = new Thread(() -> {
+            for (int frame = 0; frame < 200000; frame++) {
+                for (int y = 0; y < Display.HEIGHT; y++) {
+                    display.setPixel(frame % 64, y, true, false);
+                    display.setPixel((frame + 63) % 64, y, false, false);
+                }
+                display.publishFrame();
+            }
+        });
+        writer.start();
+
+        long[] rows = new long[Display.HEIGHT];
+        while (writer.isAlive()) {
+            display.readFrame(rows);
+            for (int y = 1; y < Display.HEIGHT; y++) {
+                assertEquals(rows[0], rows[y]);
+            }
+        }
+        writer.join();
+    }
+}
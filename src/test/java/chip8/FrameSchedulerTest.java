@@ -0,0 +1,52 @@
+package chip8;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class FrameSchedulerTest {
+
+    @Test
+    public void budgetSumTest() {
+        //500Hz doesn't divide evenly into 60 frames, the remainder must not be lost
+        FrameScheduler scheduler = new FrameScheduler(500);
+
+        int sum = 0;
+        for (int i = 0; i < 60; i++) {
+            int budget = scheduler.nextFrameBudget();
+            assertTrue(budget == 8 || budget == 9);
+            sum += budget;
+        }
+
+        assertEquals(500, sum);
+    }
+
+    @Test
+    public void lowFrequencyBudgetTest() {
+        //30Hz executes an instruction every second frame
+        FrameScheduler scheduler = new FrameScheduler(30);
+
+        int sum = 0;
+        for (int i = 0; i < 60; i++) {
+            sum += scheduler.nextFrameBudget();
+        }
+
+        assertEquals(30, sum);
+    }
+
+    @Test
+    public void waitForNextFrameTest() {
+        FrameScheduler scheduler = new FrameScheduler(600);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            scheduler.nextFrameBudget();
+            scheduler.waitForNextFrame();
+        }
+
+        //6 frames take at least 100ms
+        assertTrue(System.nanoTime() - start >= 100_000_000L - 1_000_000L);
+    }
+}
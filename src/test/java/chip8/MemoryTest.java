@@ -0,0 +1,144 @@
+package chip8;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class MemoryTest {
+
+    @Test
+    public void modifiedSinceTest() {
+        Memory memory = new Memory();
+        long generation = memory.getGeneration();
+
+        assertFalse(memory.modifiedSince(0x200, 0x1000, generation));
+
+        memory.set((short) 0x345, (byte) 1);
+
+        assertTrue(memory.getGeneration() > generation);
+        assertTrue(memory.modifiedSince(0x200, 0x1000, generation));
+        assertTrue(memory.modifiedSince(0x345, 0x346, generation));
+        //the whole page is reported
+        assertTrue(memory.modifiedSince(0x340, 0x341, generation));
+        assertFalse(memory.modifiedSince(0x200, 0x340, generation));
+        assertFalse(memory.modifiedSince(0x380, 0x1000, generation));
+        assertFalse(memory.modifiedSince(0x200, 0x1000, memory.getGeneration()));
+    }
+
+    @Test
+    public void pageGenerationTest() {
+        Memory memory = new Memory();
+        int page = 0x345 >> Memory.PAGE_SHIFT;
+
+        assertEquals(0, memory.getPageGeneration(page));
+
+        memory.set((short) 0x345, (byte) 1);
+        long first = memory.getPageGeneration(page);
+        assertEquals(memory.getGeneration(), first);
+
+        memory.set((short) 0x800, (byte) 1);
+        assertEquals(first, memory.getPageGeneration(page));
+    }
+
+    @Test
+    public void listenerTest() {
+        Memory memory = new Memory();
+        int[] written = new int[2];
+        MemoryListener listener = (address, length) -> {
+            written[0] = address;
+            written[1] += length;
+        };
+
+        memory.addListener(listener);
+        memory.set((short) 0x300, (byte) 1);
+        assertEquals(0x300, written[0]);
+        assertEquals(1, written[1]);
+
+        memory.removeListener(listener);
+        memory.set((short) 0x400, (byte) 1);
+        assertEquals(0x300, written[0]);
+    }
+
+    @Test
+    public void faultPolicyTest() {
+        Memory memory = new Memory();
+        memory.setFaultReport(null);
+        memory.set((short) 0x005, (byte) 0x42);
+
+        //ignore is the default
+        assertEquals(0, memory.get((short) 0x1005));
+        assertFalse(memory.set((short) -1, (byte) 1));
+        assertEquals(0, memory.getStack((byte) -1));
+        assertEquals(2, memory.getFaultCount());
+        assertEquals(1, memory.getStackFaultCount());
+
+        memory.setFaultPolicy(FaultPolicy.WRAP);
+        assertEquals(0x42, memory.get((short) 0x1005));
+        assertTrue(memory.set((short) -1, (byte) 7));
+        assertEquals(7, memory.get((short) 0xFFF));
+        assertTrue(memory.setStack((short) 16, (short) 0x345));
+        assertEquals(0x345, memory.getStack((byte) 0));
+
+        memory.setFaultPolicy(FaultPolicy.TRAP);
+        MemoryFaultException e = assertThrows(MemoryFaultException.class, () -> memory.get((short) 0x1000));
+        assertEquals(0x1000, e.getAddress());
+        assertThrows(MemoryFaultException.class, () -> memory.getStack((byte) -1));
+
+        assertEquals(0x42, memory.get((short) 0x005));
+        assertEquals(5, memory.getFaultCount());
+    }
+
+    @Test
+    public void heatmapTest() {
+        Memory memory = new Memory();
+        memory.setFaultReport(null);
+        MemoryHeatmap heatmap = new MemoryHeatmap(true);
+        memory.setHeatmap(heatmap);
+
+        for (int i = 0; i < 16; i++) {
+            memory.get((short) 0x300);
+        }
+        memory.set((short) 0x301, (byte) 1);
+        memory.setStack((short) 2, (short) 0x202);
+        memory.getStack((byte) 2);
+        //faults aren't counted
+        memory.get((short) 0x1000);
+
+        assertEquals(16, heatmap.getReads(0x300));
+        assertEquals(1, heatmap.getWrites(0x301));
+        assertEquals(0, heatmap.getReads(0x301));
+        assertEquals(1, heatmap.getStackWrites(2));
+        assertEquals(1, heatmap.getStackReads(2));
+        assertEquals(0, heatmap.getReads(0));
+
+        heatmap.decayNow();
+        assertEquals(14, heatmap.getReads(0x300));
+        assertEquals(0, heatmap.getWrites(0x301));
+
+        //the tools' reads aren't counted
+        assertEquals(1, memory.peek(0x301));
+        new Disassembler(memory).disassemble((short) 0x300);
+        assertEquals(14, heatmap.getReads(0x300));
+        assertEquals(0, heatmap.getReads(0x301));
+
+        memory.setHeatmap(null);
+        memory.get((short) 0x300);
+        assertEquals(14, heatmap.getReads(0x300));
+    }
+
+    @Test
+    public void heatmapSaturationTest() {
+        MemoryHeatmap heatmap = new MemoryHeatmap(false);
+
+        //without the decay a hot cell stays the hottest instead of overflowing
+        for (long i = 0; i < Integer.MAX_VALUE + 10L; i++) {
+            heatmap.read(0x300);
+        }
+        heatmap.frame();
+        assertEquals(Integer.MAX_VALUE, heatmap.getReads(0x300));
+    }
+}
@@ -0,0 +1,50 @@
+package chip8;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class ProfilerTest {
+
+    @Test
+    public void countTest() throws IOException {
+        Memory memory = new Memory();
+        Registry registry = new Registry();
+        CPU cpu = TestPrograms.cpu(memory, registry);
+        Profiler profiler = new Profiler();
+        cpu.setProfiler(profiler);
+
+        int[] program = {
+                0x6003, //200: LD V0, 03
+                0x70FF, //202: ADD V0, FF
+                0x3000, //204: SE V0, 00
+                0x1202, //206: JP 202
+                0x1208  //208: JP 208
+        };
+        TestPrograms.load(memory, program);
+
+        //1 + 3 loops of ADD, SE + 2 JP back + 5 times JP 208
+        for (int i = 0; i < 14; i++) {
+            cpu.step();
+        }
+
+        assertEquals(14, profiler.getTotal());
+        assertEquals(3, profiler.getInstructionCount(Decoder.ADD_VX_KK));
+        assertEquals(7, profiler.getInstructionCount(Decoder.JP));
+        assertEquals(5, profiler.getAddressCount(0x208));
+        assertArrayEquals(new int[] {0x208, 0x202}, profiler.getHottestAddresses(2));
+
+        StringBuilder report = new StringBuilder();
+        profiler.report(report, new Disassembler(memory), 3);
+        assertTrue(report.toString().contains("1nnn JP"));
+        assertTrue(report.toString().contains("208 12 08 JP 208"));
+
+        profiler.reset();
+        assertEquals(0, profiler.getTotal());
+    }
+}
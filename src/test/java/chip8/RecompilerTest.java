@@ -0,0 +1,223 @@
+package chip8;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class RecompilerTest {
+
+    /**
+     * Single chip-8 machine used in the tests.
+     */
+    private static class Machine {
+        Memory memory = new Memory();
+        Registry registry = new Registry();
+        Keyboard keyboard = new Keyboard();
+        Display display = new HeadlessDisplay(memory, true);
+        CPU cpu;
+        Recompiler recompiler;
+
+        Machine(byte[] program, boolean loadStoreQuirk, boolean shiftQuirk, boolean compiled) {
+            //random programs fault all the time
+            memory.setFaultReport(null);
+            TestPrograms.load(memory, program);
+            cpu = new CPU(memory, registry, display, keyboard, loadStoreQuirk, shiftQuirk);
+            //self-modifying programs may create Cxkk instructions
+            cpu.setRandomSeed(0);
+            if (compiled) {
+                recompiler = new Recompiler(cpu, registry, memory, shiftQuirk);
+            }
+        }
+
+        /**
+         * Runs the machine.
+         * @return Class of the exception thrown by the program (e.g. returning with an empty stack) or null.
+         */
+        Class<?> runCatching(int cycles) {
+            try {
+                run(cycles);
+                return null;
+            } catch (RuntimeException e) {
+                return e.getClass();
+            }
+        }
+
+        void run(int cycles) {
+            if (recompiler != null) {
+                recompiler.run(cycles);
+            } else {
+                for (int i = 0; i < cycles; i++) {
+                    cpu.step();
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates a random program, using all the instructions with deterministic results.
+     * Jumps stay inside of the program and I points to the program or right behind it,
+     * so Fx33 and Fx55 modify the program's code.
+     */
+    private byte[] randomProgram(Random random, int instructions) {
+        byte[] program = new byte[instructions * 2];
+        for (int i = 0; i < instructions - 1; i++) {
+            int x = random.nextInt(16);
+            int y = random.nextInt(16);
+            int kk = random.nextInt(256);
+            int target = 0x200 + random.nextInt(instructions) * 2;
+            int instr;
+
+            switch (random.nextInt(30)) {
+                case 0: instr = 0x00E0; break;
+                case 1: instr = 0x1000 | target; break;
+                case 2: instr = 0x3000 | x << 8 | kk; break;
+                case 3: instr = 0x4000 | x << 8 | kk; break;
+                case 4: instr = 0x5000 | x << 8 | y << 4; break;
+                case 5: instr = 0x6000 | x << 8 | kk; break;
+                case 6: instr = 0x7000 | x << 8 | kk; break;
+                case 7: instr = 0x8000 | x << 8 | y << 4; break;
+                case 8: instr = 0x8001 | x << 8 | y << 4; break;
+                case 9: instr = 0x8002 | x << 8 | y << 4; break;
+                case 10: instr = 0x8003 | x << 8 | y << 4; break;
+                case 11: instr = 0x8004 | x << 8 | y << 4; break;
+                case 12: instr = 0x8005 | x << 8 | y << 4; break;
+                case 13: instr = 0x8006 | x << 8 | y << 4; break;
+                case 14: instr = 0x8007 | x << 8 | y << 4; break;
+                case 15: instr = 0x800E | x << 8 | y << 4; break;
+                case 16: instr = 0x9000 | x << 8 | y << 4; break;
+                case 17: instr = 0xA000 | (0x200 + random.nextInt(instructions * 2 + 0x40)); break;
+                case 18: instr = 0xD000 | x << 8 | y << 4 | random.nextInt(16); break;
+                case 19: instr = 0xF007 | x << 8; break;
+                case 20: instr = 0xF015 | x << 8; break;
+                case 21: instr = 0xF018 | x << 8; break;
+                case 22: instr = 0xF01E | x << 8; break;
+                case 23: instr = 0xF029 | x << 8; break;
+                case 24: instr = 0xF033 | x << 8; break;
+                case 25: instr = 0xF055 | x << 8; break;
+                case 26: instr = 0xF065 | x << 8; break;
+                case 27: instr = 0x0123; break;
+                case 28: instr = 0x800F | x << 8 | y << 4; break;
+                default: instr = 0x6000 | x << 8 | kk; break;
+            }
+
+            program[i * 2] = (byte) (instr >> 8);
+            program[i * 2 + 1] = (byte) instr;
+        }
+
+        //the program loops forever
+        program[program.length - 2] = 0x12;
+        program[program.length - 1] = 0x00;
+        return program;
+    }
+
+    /**
+     * Compares the whole state of the machines.
+     */
+    private void assertSameState(Machine expected, Machine actual, String message) {
+        assertArrayEquals(expected.registry.VReg, actual.registry.VReg, message);
+        assertEquals(expected.registry.IReg, actual.registry.IReg, message);
+        assertEquals(expected.registry.PC, actual.registry.PC, message);
+        assertEquals(expected.registry.SP, actual.registry.SP, message);
+        assertEquals(expected.registry.DT, actual.registry.DT, message);
+        assertEquals(expected.registry.ST, actual.registry.ST, message);
+        assertEquals(expected.cpu.getCycles(), actual.cpu.getCycles(), message);
+
+        for (int i = 0; i < 0x1000; i++) {
+            assertEquals(expected.memory.get((short) i), actual.memory.get((short) i), message + " memory " + i);
+        }
+        for (byte i = 0; i < 16; i++) {
+            assertEquals(expected.memory.getStack(i), actual.memory.getStack(i), message);
+        }
+        for (int y = 0; y < 32; y++) {
+            for (int x = 0; x < 64; x += 8) {
+                assertEquals(expected.display.getByte(x, y), actual.display.getByte(x, y), message);
+            }
+        }
+    }
+
+    @Test
+    public void randomProgramsTest() {
+        int compiledBlocks = 0;
+
+        for (int seed = 0; seed < 40; seed++) {
+            Random random = new Random(seed);
+            byte[] program = randomProgram(random, 96);
+            boolean loadStoreQuirk = random.nextBoolean();
+            boolean shiftQuirk = random.nextBoolean();
+
+            Machine interpreted = new Machine(program, loadStoreQuirk, shiftQuirk, false);
+            Machine compiled = new Machine(program, loadStoreQuirk, shiftQuirk, true);
+
+            for (int chunk = 0; chunk < 200; chunk++) {
+                int cycles = 1 + random.nextInt(100);
+
+                //self-modified code may crash the program, both machines have to crash the same way
+                Class<?> failure = interpreted.runCatching(cycles);
+                assertEquals(failure, compiled.runCatching(cycles), "seed " + seed + ", chunk " + chunk);
+                if (failure != null) {
+                    break;
+                }
+
+                assertSameState(interpreted, compiled, "seed " + seed + ", chunk " + chunk);
+            }
+
+            compiledBlocks += compiled.recompiler.getCompiledCount();
+        }
+
+        assertTrue(compiledBlocks > 100);
+    }
+
+    @Test
+    public void subroutineLoopTest() {
+        byte[] program = new byte[] {
+                0x60, 0x00,         //200: LD V0, 00
+                0x22, 0x10,         //202: CALL 210
+                0x70, 0x02,         //204: ADD V0, 02
+                0x40, 0x04,         //206: SNE V0, 04
+                0x60, 0x00,         //208: LD V0, 00
+                (byte) 0xB2, 0x0C,  //20A: JP V0, 20C - jumps to 20C or 20E
+                0x12, 0x02,         //20C: JP 202
+                0x12, 0x00,         //20E: JP 200
+                (byte) 0x81, 0x04,  //210: ADD V1, V0
+                (byte) 0x82, 0x1E,  //212: SHL V2, V1
+                0x00, (byte) 0xEE   //214: RET
+        };
+
+        Machine interpreted = new Machine(program, false, true, false);
+        Machine compiled = new Machine(program, false, true, true);
+
+        for (int chunk = 0; chunk < 100; chunk++) {
+            interpreted.run(97);
+            compiled.run(97);
+            assertSameState(interpreted, compiled, "chunk " + chunk);
+        }
+
+        assertTrue(compiled.recompiler.getCompiledCount() > 0);
+    }
+
+    @Test
+    public void selfModifyingBlockTest() {
+        byte[] program = new byte[] {
+                0x61, 0x01,         //200: LD V1, 01
+                0x71, 0x01,         //202: ADD V1, 01
+                0x12, 0x06,         //204: JP 206
+                (byte) 0xA2, 0x03,  //206: LD I, 203
+                (byte) 0xF1, 0x55,  //208: LD [I], V0..V1 - overwrites 203 and 204 with V0 and V1
+                0x12, 0x02          //20A: JP 202
+        };
+
+        Machine interpreted = new Machine(program, true, true, false);
+        Machine compiled = new Machine(program, true, true, true);
+
+        for (int chunk = 0; chunk < 100; chunk++) {
+            interpreted.run(50);
+            compiled.run(50);
+            assertSameState(interpreted, compiled, "chunk " + chunk);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package chip8;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.LineUnavailableException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+
+public class SoundTest {
+
+    @Test
+    public void audioThreadTest() {
+        Sound sound = null;
+        try {
+            //the size set with -audiobuf
+            sound = new Sound(256);
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            //machines without an audio device (e.g. CI) skip the test
+        }
+        assumeTrue(sound != null, "audio line unavailable");
+
+        Sound opened = sound;
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            opened.setTone(true);
+            Thread.sleep(50);
+            opened.setTone(false);
+            //the audio thread stops and the line is closed
+            opened.close();
+        });
+    }
+}
@@ -0,0 +1,27 @@
+package chip8;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+public class SpeedMeterTest {
+
+    @Test
+    public void instructionsPerSecondTest() {
+        SpeedMeter meter = new SpeedMeter(false, 0);
+
+        //nothing is measured before the window has passed
+        meter.update(300, 500_000_000L);
+        assertEquals(0, meter.getInstructionsPerSecond());
+
+        meter.update(1000, 2_000_000_000L);
+        assertEquals(500, meter.getInstructionsPerSecond());
+
+        //the next window starts where the last one ended
+        meter.update(1600, 2_900_000_000L);
+        assertEquals(500, meter.getInstructionsPerSecond());
+        meter.update(4000, 3_500_000_000L);
+        assertEquals(2000, meter.getInstructionsPerSecond());
+    }
+}
@@ -0,0 +1,47 @@
+package chip8;
+
+/**
+ * Helpers shared by the tests running small chip-8 programs.
+ */
+final class TestPrograms {
+
+    private TestPrograms() {
+    }
+
+    /**
+     * Loads a program into the memory at 0x200.
+     * @param memory The memory.
+     * @param program Instructions of the program, 16 bits each.
+     * @return The memory.
+     */
+    static Memory load(Memory memory, int... program) {
+        for (int i = 0; i < program.length; i++) {
+            memory.set((short) (0x200 + i * 2), (byte) (program[i] >> 8));
+            memory.set((short) (0x201 + i * 2), (byte) program[i]);
+        }
+        return memory;
+    }
+
+    /**
+     * Loads a program given as bytes into the memory at 0x200.
+     * @param memory The memory.
+     * @param program Bytes of the program.
+     * @return The memory.
+     */
+    static Memory load(Memory memory, byte[] program) {
+        for (int i = 0; i < program.length; i++) {
+            memory.set((short) (0x200 + i), program[i]);
+        }
+        return memory;
+    }
+
+    /**
+     * Creates a CPU without the quirks, with a headless display and its own keyboard.
+     * @param memory The memory.
+     * @param registry The registry.
+     * @return The CPU.
+     */
+    static CPU cpu(Memory memory, Registry registry) {
+        return new CPU(memory, registry, new HeadlessDisplay(memory, true), new Keyboard(), false, false);
+    }
+}
@@ -0,0 +1,86 @@
+package chip8;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class TraceDiffTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Runs the ROM with the shift quirk turned on or off and traces it.
+     * @return Path to the trace.
+     */
+    private String trace(String rom, boolean shiftQuirk, String name) throws IOException {
+        String path = tempDir.resolve(name).toString();
+        Chip8 chip8 = new Chip8(rom, 500, false, shiftQuirk, true, false, true);
+        chip8.startTrace(path);
+        chip8.runCycles(20);
+        chip8.stopTrace();
+        return path;
+    }
+
+    @Test
+    public void quirkDivergenceTest() throws IOException {
+        Path rom = tempDir.resolve("shift.ch8");
+        Files.write(rom, new byte[] {
+                0x60, 0x02,              //LD V0, 02
+                0x61, 0x08,              //LD V1, 08
+                (byte) 0x80, 0x16,       //SHR V0, V1
+                0x12, 0x06               //JP 206
+        });
+
+        String quirk = trace(rom.toString(), true, "quirk.trace");
+        String noQuirk = trace(rom.toString(), false, "noquirk.trace");
+
+        TraceDiff same = new TraceDiff(quirk, quirk);
+        assertEquals(-1, same.compare());
+        assertNull(same.getDifference());
+
+        TraceDiff diff = new TraceDiff(quirk, noQuirk);
+        assertEquals(2, diff.compare());
+        assertEquals("V0 01 != 04", diff.getDifference());
+
+        StringBuilder report = new StringBuilder();
+        diff.report(report);
+        assertTrue(report.toString().contains(">         2  204 80 16"));
+    }
+
+    @Test
+    public void timersTest() throws IOException {
+        Path rom = tempDir.resolve("timer.ch8");
+        Files.write(rom, new byte[] {
+                0x60, 0x50,              //LD V0, 50
+                (byte) 0xF0, 0x15,       //LD DT, V0
+                0x12, 0x04               //JP 204
+        });
+
+        //500Hz and 600Hz decrement the timer after 8 and 10 instructions
+        String[] paths = new String[2];
+        int[] frequencies = {500, 600};
+        for (int i = 0; i < 2; i++) {
+            paths[i] = tempDir.resolve(i + ".trace").toString();
+            Chip8 chip8 = new Chip8(rom.toString(), frequencies[i], false, true, true, false, true);
+            chip8.startTrace(paths[i]);
+            chip8.runCycles(20);
+            chip8.stopTrace();
+        }
+
+        TraceDiff diff = new TraceDiff(paths[0], paths[1]);
+        assertEquals(8, diff.compare());
+        assertEquals("DT/ST 4F/00 != 50/00", diff.getDifference());
+
+        diff.setCompareTimers(false);
+        assertEquals(-1, diff.compare());
+    }
+}
@@ -0,0 +1,115 @@
+package chip8;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class TraceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void writeReadTest() throws IOException {
+        Memory memory = new Memory();
+        Registry registry = new Registry();
+        Display display = new HeadlessDisplay(memory, true);
+        CPU cpu = new CPU(memory, registry, display, new Keyboard(), false, false);
+
+        int[] program = {
+                0x6105, //200: LD V1, 05
+                0xA300, //202: LD I, 300
+                0xF155, //204: LD [I], V1
+                0xA000, //206: LD I, 000 - sprite "0"
+                0xD015, //208: DRW V0, V1, 5
+                0x120A  //20A: JP 20A
+        };
+        TestPrograms.load(memory, program);
+
+        String path = tempDir.resolve("run.trace").toString();
+        TraceWriter writer = new TraceWriter(path, memory, display, registry);
+        cpu.setTracer(writer);
+        for (int i = 0; i < 10; i++) {
+            cpu.step();
+        }
+        writer.close();
+
+        try (TraceReader reader = new TraceReader(path)) {
+            assertEquals(10, reader.getRecordCount());
+            TraceRecord record = new TraceRecord();
+
+            assertTrue(reader.next(record));
+            assertEquals(0, record.cycle);
+            assertEquals(0x200, record.PC);
+            assertEquals(0x6105, record.opcode);
+            assertEquals(1 << 1, record.changedRegisters);
+            assertEquals(5, record.VReg[1]);
+            assertEquals(0, record.writeLength);
+
+            assertTrue(reader.next(record));
+            assertEquals(0x300, record.IReg);
+            assertEquals(0, record.changedRegisters);
+            long emptyScreen = record.frameHash;
+
+            //Fx55 writes V0 and V1
+            assertTrue(reader.next(record));
+            assertEquals(0x300, record.writeAddress);
+            assertEquals(2, record.writeLength);
+            assertEquals(0, record.writeData[0]);
+            assertEquals(5, record.writeData[1]);
+
+            assertTrue(reader.next(record));
+            assertEquals(emptyScreen, record.frameHash);
+            assertTrue(reader.next(record));
+            assertNotEquals(emptyScreen, record.frameHash);
+
+            reader.seek(9);
+            assertTrue(reader.next(record));
+            assertEquals(9, record.cycle);
+            assertEquals(0x20A, record.PC);
+            assertFalse(reader.next(record));
+        }
+    }
+
+    @Test
+    public void unclosedTraceTest() throws IOException {
+        Memory memory = TestPrograms.load(new Memory(), 0x1200); //200: JP 200
+        Registry registry = new Registry();
+        Display display = new HeadlessDisplay(memory, true);
+        CPU cpu = new CPU(memory, registry, display, new Keyboard(), false, false);
+
+        String path = tempDir.resolve("killed.trace").toString();
+        TraceWriter writer = new TraceWriter(path, memory, display, registry);
+        cpu.setTracer(writer);
+        for (int i = 0; i < 10; i++) {
+            cpu.step();
+        }
+
+        //a run killed before closing leaves a whole chunk, the zeros in it aren't records
+        try (TraceReader reader = new TraceReader(path)) {
+            assertEquals(0, reader.getRecordCount());
+        }
+
+        writer.close();
+        try (TraceReader reader = new TraceReader(path)) {
+            assertEquals(10, reader.getRecordCount());
+        }
+    }
+
+    @Test
+    public void invalidFileTest() throws IOException {
+        Path path = tempDir.resolve("invalid.trace");
+        Files.write(path, new byte[] {1, 2, 3});
+        assertThrows(IOException.class, () -> new TraceReader(path.toString()));
+    }
+}